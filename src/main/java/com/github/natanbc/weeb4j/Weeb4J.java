@@ -29,6 +29,7 @@ import javax.annotation.Nullable;
 import java.awt.Color;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 
 @SuppressWarnings({"unused", "WeakerAccess"})
 public interface Weeb4J {
@@ -132,6 +133,7 @@ public interface Weeb4J {
 
     class Builder {
         private OkHttpClient client;
+        private OkHttpClient downloadClient;
         private RateLimiterFactory rateLimiterFactory;
         private TokenType tokenType;
         private String token;
@@ -143,6 +145,8 @@ public interface Weeb4J {
         private Long botId;
         private SettingCache settingCache;
         private ImageCache imageCache;
+        private Executor imageCacheExecutor;
+        private Executor imageMapperExecutor;
 
         @CheckReturnValue
         @Nonnull
@@ -170,6 +174,13 @@ public interface Weeb4J {
             return this;
         }
 
+        @CheckReturnValue
+        @Nonnull
+        public Builder setDownloadClient(@Nullable OkHttpClient client) {
+            this.downloadClient = client;
+            return this;
+        }
+
         @CheckReturnValue
         @Nonnull
         public Builder setToken(@Nonnull TokenType type, @Nonnull String token) {
@@ -235,6 +246,20 @@ public interface Weeb4J {
             return this;
         }
 
+        @CheckReturnValue
+        @Nonnull
+        public Builder setImageCacheExecutor(@Nullable Executor executor) {
+            this.imageCacheExecutor = executor;
+            return this;
+        }
+
+        @CheckReturnValue
+        @Nonnull
+        public Builder setImageMapperExecutor(@Nullable Executor executor) {
+            this.imageMapperExecutor = executor;
+            return this;
+        }
+
         @CheckReturnValue
         @Nonnull
         public Weeb4J build() {
@@ -246,8 +271,10 @@ public interface Weeb4J {
                 Weeb4JImpl.LOGGER.info("No bot environment specified, defaulting to 'production'");
             }
             String name = botName == null ? Utils.tryFindMainClass() : botName;
+            OkHttpClient apiClient = client == null ? new OkHttpClient() : client;
             return new Weeb4JImpl(
-                    client == null ? new OkHttpClient() : client,
+                    apiClient,
+                    downloadClient == null ? Weeb4JImpl.createDownloadClient(apiClient) : downloadClient,
                     rateLimiterFactory,
                     trackCallSites,
                     environment == null ? Environment.PRODUCTION : environment,
@@ -264,7 +291,9 @@ public interface Weeb4J {
                     ),
                     botId,
                     settingCache,
-                    imageCache
+                    imageCache,
+                    imageCacheExecutor,
+                    imageMapperExecutor
             );
         }
     }
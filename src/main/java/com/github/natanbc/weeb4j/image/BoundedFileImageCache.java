@@ -0,0 +1,209 @@
+package com.github.natanbc.weeb4j.image;
+
+import com.github.natanbc.weeb4j.internal.Weeb4JImpl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * File based image cache bounded by total size and/or amount of images.
+ *
+ * Eviction uses a segmented LRU policy: new images enter a probation segment and are promoted to a
+ * protected segment when accessed again, so images that were only requested once are evicted first.
+ * Accesses are only recorded in a queue on the request path, and are applied to the policy by a
+ * background thread, which also deletes evicted images.
+ */
+class BoundedFileImageCache extends FileImageCache {
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean maintenanceScheduled = new AtomicBoolean();
+    private final ExecutorService maintenance = Executors.newSingleThreadExecutor(r->{
+        Thread t = new Thread(r, "Weeb4J-ImageCacheEviction");
+        t.setDaemon(true);
+        return t;
+    });
+    //only accessed by the maintenance thread
+    private final LinkedHashMap<String, Long> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private final int maxEntries;
+    private final long maxProtectedBytes;
+    private long probationBytes;
+    private long protectedBytes;
+
+    BoundedFileImageCache(File directory, int bufferSize, long maxBytes, int maxEntries) throws IOException {
+        super(directory, bufferSize);
+        if(maxBytes < 0) {
+            throw new IllegalArgumentException("Max bytes < 0");
+        }
+        if(maxEntries < 0) {
+            throw new IllegalArgumentException("Max entries < 0");
+        }
+        this.maxBytes = maxBytes == 0 ? Long.MAX_VALUE : maxBytes;
+        this.maxEntries = maxEntries == 0 ? Integer.MAX_VALUE : maxEntries;
+        this.maxProtectedBytes = (long)(this.maxBytes * PROTECTED_RATIO);
+        File[] files = directory.listFiles(f->f.isFile() && !isTemporary(f));
+        if(files != null) {
+            //least recently modified files start as eviction candidates
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for(File f : files) {
+                events.add(new Event(EventType.WRITE, f.getName(), f.length()));
+            }
+            scheduleMaintenance();
+        }
+    }
+
+    @Override
+    @Nullable
+    public InputStream retrieve(@Nonnull String name) throws IOException {
+        InputStream in = super.retrieve(name);
+        if(in != null) {
+            recordRead(name);
+        }
+        return in;
+    }
+
+    @Override
+    public long transferTo(@Nonnull String name, @Nonnull WritableByteChannel target) throws IOException {
+        long transferred = super.transferTo(name, target);
+        if(transferred != -1) {
+            recordRead(name);
+        }
+        return transferred;
+    }
+
+    @Override
+    void onSaved(String name, long size) {
+        events.add(new Event(EventType.WRITE, name, size));
+        scheduleMaintenance();
+    }
+
+    @Override
+    public void purge(@Nonnull String name) throws IOException {
+        super.purge(name);
+        events.add(new Event(EventType.REMOVE, name, 0));
+        scheduleMaintenance();
+    }
+
+    private void recordRead(String name) {
+        events.add(new Event(EventType.READ, name, 0));
+        scheduleMaintenance();
+    }
+
+    private void scheduleMaintenance() {
+        if(maintenanceScheduled.compareAndSet(false, true)) {
+            maintenance.execute(this::runMaintenance);
+        }
+    }
+
+    private void runMaintenance() {
+        maintenanceScheduled.set(false);
+        drainEvents();
+        evict();
+    }
+
+    private void drainEvents() {
+        Event e;
+        while((e = events.poll()) != null) {
+            switch(e.type) {
+                case READ:
+                    onRead(e.name);
+                    break;
+                case WRITE:
+                    remove(e.name);
+                    //evicted after this write was queued, don't account for a file that's gone
+                    if(!new File(directory, e.name).isFile()) break;
+                    probation.put(e.name, e.size);
+                    probationBytes += e.size;
+                    break;
+                case REMOVE:
+                    remove(e.name);
+                    break;
+            }
+        }
+    }
+
+    private void onRead(String name) {
+        if(protectedSegment.get(name) != null) return; //access order updated by get
+        Long size = probation.remove(name);
+        if(size == null) return;
+        probationBytes -= size;
+        protectedSegment.put(name, size);
+        protectedBytes += size;
+        Iterator<Map.Entry<String, Long>> it = protectedSegment.entrySet().iterator();
+        while(protectedBytes > maxProtectedBytes && protectedSegment.size() > 1 && it.hasNext()) {
+            Map.Entry<String, Long> demoted = it.next();
+            it.remove();
+            protectedBytes -= demoted.getValue();
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationBytes += demoted.getValue();
+        }
+    }
+
+    private void remove(String name) {
+        Long size = probation.remove(name);
+        if(size != null) {
+            probationBytes -= size;
+        }
+        size = protectedSegment.remove(name);
+        if(size != null) {
+            protectedBytes -= size;
+        }
+    }
+
+    private void evict() {
+        while(probationBytes + protectedBytes > maxBytes || probation.size() + protectedSegment.size() > maxEntries) {
+            //apply writes queued since the last drain first, so a freshly saved image isn't picked as a stale victim
+            if(!events.isEmpty()) {
+                drainEvents();
+                continue;
+            }
+            LinkedHashMap<String, Long> segment = probation.isEmpty() ? protectedSegment : probation;
+            Iterator<Map.Entry<String, Long>> it = segment.entrySet().iterator();
+            if(!it.hasNext()) return;
+            Map.Entry<String, Long> victim = it.next();
+            it.remove();
+            if(segment == probation) {
+                probationBytes -= victim.getValue();
+            } else {
+                protectedBytes -= victim.getValue();
+            }
+            try {
+                super.purge(victim.getKey());
+            } catch(IOException ex) {
+                Weeb4JImpl.LOGGER.error("Error evicting image {}", victim.getKey(), ex);
+            }
+        }
+    }
+
+    private enum EventType {
+        READ, WRITE, REMOVE
+    }
+
+    private static class Event {
+        final EventType type;
+        final String name;
+        final long size;
+
+        Event(EventType type, String name, long size) {
+            this.type = type;
+            this.name = name;
+            this.size = size;
+        }
+    }
+}
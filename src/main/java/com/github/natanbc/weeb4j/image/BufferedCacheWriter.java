@@ -0,0 +1,39 @@
+package com.github.natanbc.weeb4j.image;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Buffers an image in memory, then {@link ImageCache#save(String, java.io.InputStream) saves} it on commit.
+ */
+class BufferedCacheWriter implements CacheWriter {
+    private final ImageCache cache;
+    private final String name;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    BufferedCacheWriter(ImageCache cache, String name) {
+        this.cache = cache;
+        this.name = name;
+    }
+
+    @Override
+    public void write(@Nonnull byte[] data, int offset, int length) throws IOException {
+        if(buffer == null) throw new IOException("Writer closed");
+        buffer.write(data, offset, length);
+    }
+
+    @Override
+    public void commit() throws IOException {
+        if(buffer == null) throw new IOException("Writer closed");
+        byte[] data = buffer.toByteArray();
+        buffer = null;
+        cache.save(name, new ByteArrayInputStream(data));
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+    }
+}
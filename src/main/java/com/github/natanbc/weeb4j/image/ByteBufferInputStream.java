@@ -0,0 +1,54 @@
+package com.github.natanbc.weeb4j.image;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Input stream reading from a byte buffer, without copying it's contents.
+ */
+class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(@Nonnull ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        if(!buffer.hasRemaining()) return -1;
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] b, int off, int len) {
+        if(len == 0) return 0;
+        if(!buffer.hasRemaining()) return -1;
+        int r = Math.min(len, buffer.remaining());
+        buffer.get(b, off, r);
+        return r;
+    }
+
+    @Override
+    public long skip(long n) {
+        if(n <= 0) return 0;
+        int s = (int)Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + s);
+        return s;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    static long write(ByteBuffer buffer, WritableByteChannel target) throws IOException {
+        long total = 0;
+        while(buffer.hasRemaining()) {
+            total += target.write(buffer);
+        }
+        return total;
+    }
+}
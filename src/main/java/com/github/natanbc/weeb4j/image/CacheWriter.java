@@ -0,0 +1,38 @@
+package com.github.natanbc.weeb4j.image;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Incrementally writes an image to a cache. The image only becomes visible to
+ * {@link ImageCache#retrieve(String) retrieve} after {@link #commit() commit} is called.
+ *
+ * @see ImageCache#openWriter(String)
+ */
+public interface CacheWriter extends Closeable {
+    /**
+     * Writes a chunk of the image.
+     *
+     * @param data Buffer containing the data.
+     * @param offset Offset of the data in the buffer.
+     * @param length Length of the data.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(@Nonnull byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Stores the written data in the cache.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void commit() throws IOException;
+
+    /**
+     * Releases resources used by this writer. If {@link #commit() commit} wasn't called,
+     * the written data is discarded.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,80 @@
+package com.github.natanbc.weeb4j.image;
+
+import com.github.natanbc.reliqua.request.RequestException;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Result of downloading one image of a {@link ImageProvider#downloadAll(java.util.List, com.github.natanbc.weeb4j.util.InputStreamFunction, int) batch}.
+ *
+ * @param <T> Type returned by the mapper.
+ */
+@SuppressWarnings("unused")
+public final class DownloadResult<T> {
+    private final Image image;
+    private final T value;
+    private final RequestException error;
+
+    private DownloadResult(Image image, T value, RequestException error) {
+        this.image = image;
+        this.value = value;
+        this.error = error;
+    }
+
+    /**
+     * Returns the downloaded image.
+     *
+     * @return The image.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * Returns the value returned by the mapper.
+     *
+     * @return The mapped value, or null if the download failed.
+     */
+    @Nullable
+    @CheckReturnValue
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the error that made the download fail.
+     *
+     * @return The error, or null if the download succeeded.
+     */
+    @Nullable
+    @CheckReturnValue
+    public RequestException getError() {
+        return error;
+    }
+
+    /**
+     * Returns whether or not the download succeeded.
+     *
+     * @return True if the image was downloaded.
+     */
+    @CheckReturnValue
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public static <T> DownloadResult<T> success(@Nonnull Image image, @Nullable T value) {
+        return new DownloadResult<>(image, value, null);
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public static <T> DownloadResult<T> failure(@Nonnull Image image, @Nonnull RequestException error) {
+        return new DownloadResult<>(image, null, error);
+    }
+}
@@ -1,19 +1,33 @@
 package com.github.natanbc.weeb4j.image;
 
+import com.github.natanbc.weeb4j.internal.Weeb4JImpl;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
+/**
+ * File based image cache. Images are written to temporary files and atomically renamed when complete,
+ * so reads don't need any locking and partially written images are never visible.
+ */
 class FileImageCache implements ImageCache {
-    private final Map<String, ReentrantLock> modified = new ConcurrentHashMap<>();
-    private final File directory;
+    private static final String TEMP_PREFIX = ".weeb4j-";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    final File directory;
     private final int bufferSize;
 
     FileImageCache(File directory, int bufferSize) throws IOException {
@@ -36,54 +50,144 @@ class FileImageCache implements ImageCache {
         }
         this.directory = directory;
         this.bufferSize = bufferSize;
+        //leftovers from saves interrupted by a crash
+        File[] temporary = directory.listFiles(FileImageCache::isTemporary);
+        if(temporary != null) {
+            for(File f : temporary) {
+                if(!f.delete()) {
+                    Weeb4JImpl.LOGGER.warn("Unable to delete temporary file {}", f.getAbsolutePath());
+                }
+            }
+        }
     }
 
     @Override
     @Nullable
     public InputStream retrieve(@Nonnull String name) throws IOException {
-        ReentrantLock lock = modified.computeIfAbsent(name, k->new ReentrantLock());
-        lock.lock();
+        File image = new File(directory, name);
         try {
-            File image = new File(directory, name);
-            if(!image.exists()) return null;
             return new FileInputStream(image);
-        } finally {
-            lock.unlock();
-            modified.remove(name, lock);
+        } catch(FileNotFoundException e) {
+            if(image.exists()) throw e;
+            return null;
         }
     }
 
     @Override
     public void save(@Nonnull String name, @Nonnull InputStream in) throws IOException {
-        ReentrantLock lock = modified.computeIfAbsent(name, k->new ReentrantLock());
-        lock.lock();
-        try(FileOutputStream fos = new FileOutputStream(new File(directory, name));
+        try(FileCacheWriter writer = new FileCacheWriter(name);
             InputStream i = in) {
             byte[] buffer = new byte[bufferSize];
             int r;
             while((r = i.read(buffer)) != -1) {
-                fos.write(buffer, 0, r);
+                writer.write(buffer, 0, r);
             }
-        } finally {
-            lock.unlock();
-            modified.remove(name, lock);
+            writer.commit();
         }
     }
 
     @Override
     public void purge(@Nonnull String name) throws IOException {
-        File f = new File(directory, name);
-        if(!f.exists()) return;
-        ReentrantLock lock = modified.computeIfAbsent(name, k->new ReentrantLock());
-        lock.lock();
+        Files.deleteIfExists(new File(directory, name).toPath());
+    }
+
+    @Override
+    public long transferTo(@Nonnull String name, @Nonnull WritableByteChannel target) throws IOException {
+        FileChannel channel;
         try {
-            if(!f.exists()) return;
-            if(!f.delete()) {
-                throw new IOException("Unable to delete file");
+            channel = FileChannel.open(new File(directory, name).toPath(), StandardOpenOption.READ);
+        } catch(NoSuchFileException e) {
+            return -1;
+        }
+        try(FileChannel c = channel) {
+            long size = c.size();
+            long position = 0;
+            //transferTo uses sendfile or similar when available, so the data never reaches user space
+            while(position < size) {
+                position += c.transferTo(position, size - position, target);
+            }
+            return position;
+        }
+    }
+
+    @Override
+    @Nonnull
+    public CacheWriter openWriter(@Nonnull String name) throws IOException {
+        return new FileCacheWriter(name);
+    }
+
+    //called after an image is saved to the cache
+    void onSaved(String name, long size) {
+        //noop
+    }
+
+    static boolean isTemporary(File file) {
+        String name = file.getName();
+        return name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX);
+    }
+
+    private class FileCacheWriter implements CacheWriter {
+        private final String name;
+        private final Path temp;
+        private final FileOutputStream out;
+        private long size;
+        private boolean closed;
+
+        FileCacheWriter(String name) throws IOException {
+            this.name = name;
+            this.temp = Files.createTempFile(directory.toPath(), TEMP_PREFIX, TEMP_SUFFIX);
+            try {
+                this.out = new FileOutputStream(temp.toFile());
+            } catch(IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(@Nonnull byte[] data, int offset, int length) throws IOException {
+            if(closed) throw new IOException("Writer closed");
+            out.write(data, offset, length);
+            size += length;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if(closed) throw new IOException("Writer closed");
+            closed = true;
+            try {
+                //make sure the data is on disk before the rename, or a crash might leave a truncated image
+                out.getFD().sync();
+                out.close();
+                Path target = new File(directory, name).toPath();
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch(AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch(IOException e) {
+                discard();
+                throw e;
+            }
+            onSaved(name, size);
+        }
+
+        @Override
+        public void close() {
+            if(closed) return;
+            closed = true;
+            discard();
+        }
+
+        private void discard() {
+            try {
+                out.close();
+            } catch(IOException ignored) {}
+            try {
+                Files.deleteIfExists(temp);
+            } catch(IOException e) {
+                Weeb4JImpl.LOGGER.warn("Unable to delete temporary file {}", temp, e);
             }
-        } finally {
-            lock.unlock();
-            modified.remove(name, lock);
         }
     }
 }
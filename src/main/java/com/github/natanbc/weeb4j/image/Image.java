@@ -9,6 +9,7 @@ import org.json.JSONObject;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -185,6 +186,19 @@ public final class Image {
         return provider.download(this, function);
     }
 
+    /**
+     * Writes this image's bytes to a channel. Cached images are transferred directly from the cache.
+     *
+     * @param target Channel to write to. <strong>The channel is not closed after writing.</strong>
+     *
+     * @return A request for the amount of bytes written.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public PendingRequest<Long> download(@Nonnull WritableByteChannel target) {
+        return provider.download(this, target);
+    }
+
     @Nonnull
     @CheckReturnValue
     public static Image fromJSON(@Nonnull ImageProvider provider, @Nonnull JSONObject object) {
@@ -7,6 +7,15 @@ import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 /**
@@ -26,6 +35,30 @@ public interface ImageCache {
     @Nullable
     InputStream retrieve(@Nonnull String name) throws IOException;
 
+    /**
+     * Retrieves an image from the cache without blocking the calling thread.
+     *
+     * @param name Image name.
+     * @param executor Executor used for blocking I/O.
+     *
+     * @return A future for an input stream to the image if it's cached, or null if it isn't.
+     * Completes exceptionally with an {@link UncheckedIOException} if an I/O error occurs.
+     *
+     * @implNote The default implementation calls {@link #retrieve(String) retrieve} on the given executor.
+     * Implementations that don't block, such as in memory caches, complete the future directly.
+     */
+    @CheckReturnValue
+    @Nonnull
+    default CompletionStage<InputStream> retrieveAsync(@Nonnull String name, @Nonnull Executor executor) {
+        return CompletableFuture.supplyAsync(()->{
+            try {
+                return retrieve(name);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
     /**
      * Saves an image to the cache.
      *
@@ -46,6 +79,70 @@ public interface ImageCache {
      */
     void purge(@Nonnull String name) throws IOException;
 
+    /**
+     * Transfers an image from the cache to a channel. Implementations backed by files or
+     * buffers write directly to the channel, avoiding copies through java streams.
+     *
+     * @param name Image name.
+     * @param target Channel to write the image to.
+     *
+     * @return The amount of bytes transferred, or -1 if the image isn't cached.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    default long transferTo(@Nonnull String name, @Nonnull WritableByteChannel target) throws IOException {
+        InputStream in = retrieve(name);
+        if(in == null) return -1;
+        try(ReadableByteChannel channel = Channels.newChannel(in)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long total = 0;
+            while(channel.read(buffer) != -1) {
+                buffer.flip();
+                while(buffer.hasRemaining()) {
+                    total += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Opens a writer to incrementally save an image to the cache.
+     *
+     * @param name Name to save.
+     *
+     * @return A writer for the image.
+     *
+     * @throws IOException If an I/O error occurs.
+     *
+     * @implNote The default implementation buffers the image in memory, then calls
+     * {@link #save(String, InputStream) save} on commit.
+     */
+    @CheckReturnValue
+    @Nonnull
+    default CacheWriter openWriter(@Nonnull String name) throws IOException {
+        return new BufferedCacheWriter(this, name);
+    }
+
+    /**
+     * Wraps an input stream so everything read from it is also saved to the cache. The image
+     * is stored once the stream reaches it's end. If the returned stream is closed before that,
+     * the rest of the image is read from the source, so the cached image is always complete.
+     *
+     * @param name Name to save.
+     * @param in Input stream to the image.
+     *
+     * @return An input stream that saves the image to the cache while it's read.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @CheckReturnValue
+    @Nonnull
+    default InputStream fill(@Nonnull String name, @Nonnull InputStream in) throws IOException {
+        return new TeeInputStream(in, openWriter(name));
+    }
+
     /**
      * Retrieves an image from the cache if it exists, or caches it if it doesn't.
      *
@@ -57,20 +154,14 @@ public interface ImageCache {
      * @throws IOException If an I/O error occurs.
      *
      * @implNote If the image is not in the cache, this method does the request for the image
-     * and calls {@link #save(String, InputStream) save}, followed by {@link #retrieve(String) retrieve}.
-     * If {@link #retrieve(String) retrieve} returns null, a second request is made to ensure
-     * this method returns a valid image.
+     * and returns a stream that {@link #fill(String, InputStream) fills} the cache while it's read.
      */
     @CheckReturnValue
     @Nonnull
     default InputStream retrieveOrCache(@Nonnull String name, @Nonnull Supplier<InputStream> request) throws IOException {
         InputStream cached = retrieve(name);
         if(cached == null) {
-            save(name, request.get());
-            cached = retrieve(name);
-            if(cached == null) {
-                cached = request.get();
-            }
+            cached = fill(name, request.get());
         }
         return cached;
     }
@@ -118,4 +209,129 @@ public interface ImageCache {
     static ImageCache directory(@Nonnull File directory) throws IOException {
         return directory(directory, 4096);
     }
+
+    /**
+     * Creates a new file based image cache, bounded by total size and/or amount of images.
+     * When a bound is exceeded, least used images are deleted by a background thread.
+     *
+     * @param directory Directory to store images in.
+     * @param bufferSize Size of the buffer used when writing files.
+     * @param maxBytes Maximum total size of the cached images, in bytes, or 0 for no limit.
+     * @param maxEntries Maximum amount of cached images, or 0 for no limit.
+     *
+     * @return A bounded file based cache.
+     *
+     * @throws IOException If the directory can't be used for the cache, due to
+     * missing permissions or being a file.
+     */
+    @CheckReturnValue
+    @Nonnull
+    static ImageCache directory(@Nonnull File directory, @Nonnegative int bufferSize, @Nonnegative long maxBytes, @Nonnegative int maxEntries) throws IOException {
+        return new BoundedFileImageCache(directory, bufferSize, maxBytes, maxEntries);
+    }
+
+    /**
+     * Creates a new image cache that packs images into large, memory mapped segment files,
+     * instead of using one file per image. Space freed by {@link #purge(String) purging}
+     * images is reclaimed in the background.
+     *
+     * @param directory Directory to store segments in.
+     * @param segmentSize Size of each segment file, in bytes. Images bigger than this are stored in their own segment.
+     * @param bufferSize Size of the buffer used when reading images to be saved.
+     *
+     * @return A segment based cache.
+     *
+     * @throws IOException If the directory can't be used for the cache, due to
+     * missing permissions or being a file, or if the existing segments can't be loaded.
+     */
+    @CheckReturnValue
+    @Nonnull
+    static ImageCache segmented(@Nonnull File directory, @Nonnegative int segmentSize, @Nonnegative int bufferSize) throws IOException {
+        return new SegmentImageCache(directory, segmentSize, bufferSize);
+    }
+
+    /**
+     * Creates a new image cache that packs images into large, memory mapped segment files,
+     * instead of using one file per image. Space freed by {@link #purge(String) purging}
+     * images is reclaimed in the background.
+     *
+     * @param directory Directory to store segments in.
+     *
+     * @return A segment based cache, using 64 MiB segments.
+     *
+     * @throws IOException If the directory can't be used for the cache, due to
+     * missing permissions or being a file, or if the existing segments can't be loaded.
+     */
+    @CheckReturnValue
+    @Nonnull
+    static ImageCache segmented(@Nonnull File directory) throws IOException {
+        return segmented(directory, 64 * 1024 * 1024, 4096);
+    }
+
+    /**
+     * Creates a new in memory image cache, bounded by the total size of the images.
+     * Least recently used images are evicted first.
+     *
+     * @param maxBytes Maximum total size of the cached images, in bytes.
+     *
+     * @return An in memory cache.
+     */
+    @CheckReturnValue
+    @Nonnull
+    static ImageCache memory(@Nonnegative long maxBytes) {
+        return new MemoryImageCache(maxBytes, 4096);
+    }
+
+    /**
+     * Creates a new in memory image cache that stores images outside the java heap, so
+     * they don't increase heap usage or garbage collection pauses. Least recently used
+     * images are evicted first. Streams returned by {@link #retrieve(String) retrieve}
+     * read directly from the cached memory, and must be closed to allow it to be reused.
+     * Images bigger than a quarter of {@code maxBytes} aren't cached.
+     *
+     * @param maxBytes Maximum amount of off heap memory used, in bytes. Must be at least 1 MiB.
+     *
+     * @return An off heap cache.
+     */
+    @CheckReturnValue
+    @Nonnull
+    static ImageCache offHeap(@Nonnegative long maxBytes) {
+        return new OffHeapImageCache(maxBytes);
+    }
+
+    /**
+     * Creates a new image cache composed of two tiers. Images found only in the lower tier are
+     * promoted to the upper tier when retrieved, and saved images are written to both tiers.
+     *
+     * @param upper Faster, usually smaller, tier checked first.
+     * @param lower Slower tier, checked if the image is missing from the upper tier.
+     *
+     * @return A tiered cache.
+     */
+    @CheckReturnValue
+    @Nonnull
+    static ImageCache tiered(@Nonnull ImageCache upper, @Nonnull ImageCache lower) {
+        return new TieredImageCache(
+                Objects.requireNonNull(upper, "Upper tier may not be null"),
+                Objects.requireNonNull(lower, "Lower tier may not be null"),
+                4096
+        );
+    }
+
+    /**
+     * Creates a new image cache that keeps recently used images in memory, in front of another cache.
+     *
+     * @param lower Cache used for images not in memory.
+     * @param maxMemoryBytes Maximum total size of the images kept in memory, in bytes.
+     *
+     * @return A tiered cache.
+     *
+     * @see #memory(long)
+     * @see #tiered(ImageCache, ImageCache)
+     */
+    @CheckReturnValue
+    @Nonnull
+    static ImageCache tiered(@Nonnull ImageCache lower, @Nonnegative long maxMemoryBytes) {
+        return tiered(memory(maxMemoryBytes), lower);
+    }
 }
@@ -0,0 +1,116 @@
+package com.github.natanbc.weeb4j.image;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local copy of the image tags and types available for each combination of filters.
+ *
+ * Nothing is loaded until {@link #load(HiddenMode, NsfwFilter) load} is called for a combination of filters.
+ * Once loaded, the combination is refreshed periodically, lookups don't make any requests, and
+ * {@link ImageProvider#getRandomImage(String, List, HiddenMode, NsfwFilter, FileType) random image requests}
+ * with unknown types or tags for those filters fail with an {@link IllegalArgumentException} instead of
+ * making a request.
+ */
+@SuppressWarnings("unused")
+public interface ImageCatalog {
+    /**
+     * Loads, or reloads, the tags and types matching the given filters.
+     *
+     * @param hidden Filter for hidden tags and types.
+     * @param nsfw Filter for NSFW (not safe for work) tags and types.
+     *
+     * @return A stage completed once the tags and types are loaded.
+     */
+    @Nonnull
+    CompletionStage<Void> load(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw);
+
+    /**
+     * Returns whether or not the tags and types matching the given filters are loaded.
+     *
+     * @param hidden Filter for hidden tags and types.
+     * @param nsfw Filter for NSFW (not safe for work) tags and types.
+     *
+     * @return True if the data for these filters is loaded.
+     */
+    @CheckReturnValue
+    boolean isLoaded(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw);
+
+    /**
+     * Returns the loaded tags matching the given filters.
+     *
+     * @param hidden Filter for hidden tags.
+     * @param nsfw Filter for NSFW (not safe for work) tags.
+     *
+     * @return The tags, or null if they aren't loaded.
+     */
+    @CheckReturnValue
+    @Nullable
+    List<String> getTags(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw);
+
+    /**
+     * Returns the loaded types, and their previews, matching the given filters.
+     *
+     * @param hidden Filter for hidden types.
+     * @param nsfw Filter for NSFW (not safe for work) types.
+     *
+     * @return The types, or null if they aren't loaded.
+     */
+    @CheckReturnValue
+    @Nullable
+    ImageTypes getImageTypes(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw);
+
+    /**
+     * Finds a tag, ignoring case.
+     *
+     * @param tag Tag to search for.
+     * @param hidden Filter for hidden tags.
+     * @param nsfw Filter for NSFW (not safe for work) tags.
+     *
+     * @return An optional containing the tag as returned by the API, or an empty optional if there's no such tag or
+     *         the tags aren't loaded.
+     */
+    @CheckReturnValue
+    @Nonnull
+    Optional<String> findTag(@Nonnull String tag, @Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw);
+
+    /**
+     * Finds a type, ignoring case.
+     *
+     * @param type Type to search for.
+     * @param hidden Filter for hidden types.
+     * @param nsfw Filter for NSFW (not safe for work) types.
+     *
+     * @return An optional containing the type as returned by the API, or an empty optional if there's no such type or
+     *         the types aren't loaded.
+     */
+    @CheckReturnValue
+    @Nonnull
+    Optional<String> findType(@Nonnull String type, @Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw);
+
+    /**
+     * Returns the preview image for a type, ignoring case.
+     *
+     * @param type Type to get a preview of.
+     * @param hidden Filter for hidden types.
+     * @param nsfw Filter for NSFW (not safe for work) types.
+     *
+     * @return An optional containing the preview, or an empty optional if there's no preview or the types aren't loaded.
+     */
+    @CheckReturnValue
+    @Nonnull
+    Optional<PreviewImage> getPreviewImage(@Nonnull String type, @Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw);
+
+    /**
+     * Sets how often loaded tags and types are refreshed. Defaults to one hour.
+     *
+     * @param interval Time between refreshes.
+     * @param unit Unit of the interval.
+     */
+    void setRefreshInterval(long interval, @Nonnull TimeUnit unit);
+}
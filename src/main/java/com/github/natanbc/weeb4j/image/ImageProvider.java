@@ -7,7 +7,14 @@ import com.github.natanbc.weeb4j.util.InputStreamFunction;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @SuppressWarnings("unused")
 public interface ImageProvider {
@@ -39,6 +46,65 @@ public interface ImageProvider {
      */
     void setImageCache(@Nullable ImageCache cache);
 
+    /**
+     * Returns the executor used for blocking {@link #getImageCache() image cache} operations.
+     *
+     * @return The executor used for image cache operations.
+     */
+    @CheckReturnValue
+    @Nonnull
+    Executor getImageCacheExecutor();
+
+    /**
+     * Sets the executor used for blocking {@link #getImageCache() image cache} operations, keeping
+     * slow disks from occupying the threads used by the http client. If null, a default pool with
+     * 4 threads is used.
+     *
+     * @param executor Executor to use.
+     */
+    void setImageCacheExecutor(@Nullable Executor executor);
+
+    /**
+     * Returns the executor running the mappers of images read from the {@link #getImageCache() image cache}.
+     *
+     * @return The executor used for mappers of cached images.
+     */
+    @CheckReturnValue
+    @Nonnull
+    Executor getImageMapperExecutor();
+
+    /**
+     * Sets the executor running the mappers of images read from the {@link #getImageCache() image cache}.
+     * Mappers of cached images may block on disk reads, so they run apart from both the image cache
+     * executor and the http client threads. If null, a default pool creating threads as needed is used.
+     *
+     * @param executor Executor to use.
+     */
+    void setImageMapperExecutor(@Nullable Executor executor);
+
+    /**
+     * Configures the cache of image info used by {@link #getImageById(String) getImageById}, which is also filled
+     * with images returned by {@link #getRandomImage(String, List, HiddenMode, NsfwFilter, FileType) getRandomImage}.
+     * Ids of images that don't exist are cached too. Defaults to 1000 entries, kept for 10 minutes, and missing
+     * images kept for 1 minute.
+     *
+     * @param maxEntries Maximum amount of cached images, or 0 to disable caching.
+     * @param ttl How long images are cached.
+     * @param negativeTtl How long ids of images that don't exist are cached, or 0 to not cache them.
+     * @param unit Unit of the TTLs.
+     */
+    void setImageMetadataCache(int maxEntries, long ttl, long negativeTtl, @Nonnull TimeUnit unit);
+
+    /**
+     * Returns the catalog of tags and types, which can be used for lookups without making requests
+     * and to validate random image filters before making requests.
+     *
+     * @return The image catalog of this provider.
+     */
+    @CheckReturnValue
+    @Nonnull
+    ImageCatalog getImageCatalog();
+
     /**
      * Retrieve tags matching the given filters.
      *
@@ -193,6 +259,41 @@ public interface ImageProvider {
         return getImageTypes(null, null, null);
     }
 
+    /**
+     * Returns how many random images are prefetched for each combination of filters.
+     *
+     * @return The random image pool size, 0 if disabled.
+     *
+     * @see #setRandomImagePoolSize(int)
+     */
+    @CheckReturnValue
+    int getRandomImagePoolSize();
+
+    /**
+     * Sets how many random images are prefetched for each combination of filters given to
+     * {@link #getRandomImage(String, List, HiddenMode, NsfwFilter, FileType) getRandomImage}.
+     *
+     * When enabled, random images are taken from a pool without making any request, and the pool is
+     * refilled in the background, one request at a time. If the pool is empty, a request is made as usual.
+     * Disabled by default.
+     *
+     * @param size Amount of images kept for each combination of filters, or 0 to disable pooling.
+     */
+    void setRandomImagePoolSize(int size);
+
+    /**
+     * Enables saving pooled random images to the {@link #getImageCache() image cache} before they're handed out,
+     * so downloading them doesn't need a request. Has no effect if the {@link #setRandomImagePoolSize(int) pool}
+     * is disabled or no cache is configured.
+     *
+     * Downloads beyond the concurrency limit are queued. The bandwidth limit is shared by all downloads, and is
+     * enforced by pausing the http client threads reading them.
+     *
+     * @param maxConcurrentDownloads Maximum amount of images downloaded at once, or 0 to disable warming.
+     * @param maxBytesPerSecond Maximum download speed, or 0 for no limit.
+     */
+    void setRandomImagePoolCacheWarming(int maxConcurrentDownloads, long maxBytesPerSecond);
+
     /**
      * Retrieve a random image matching the specified filters.
      *
@@ -369,6 +470,58 @@ public interface ImageProvider {
         return getRandomImage(null, tags, null, null, null);
     }
 
+    /**
+     * Retrieve several distinct random images matching the specified filters.
+     *
+     * All requests are made at once, so the images arrive in about the time of a single request,
+     * rate limits permitting. Images received more than once are requested again, up to {@code count}
+     * extra times, so less than {@code count} images are returned if not enough images match the filters.
+     *
+     * @param count Amount of images to retrieve.
+     * @param type Image type.
+     * @param tags Image tags.
+     * @param hidden Filter for hidden images.
+     * @param nsfw Filter for NSFW (not safe for work) images.
+     * @param fileType Filter for type of file (JPG, PNG, GIF).
+     *
+     * @return Distinct random images matching the filters.
+     */
+    @CheckReturnValue
+    @Nonnull
+    CompletionStage<List<Image>> getRandomImages(int count, @Nullable String type, @Nullable List<String> tags, @Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw, @Nullable FileType fileType);
+
+    /**
+     * Retrieve several distinct random images matching the specified filters.
+     *
+     * @param count Amount of images to retrieve.
+     * @param type Image type.
+     *
+     * @return Distinct random images matching the filters.
+     *
+     * @see #getRandomImages(int, String, List, HiddenMode, NsfwFilter, FileType)
+     */
+    @CheckReturnValue
+    @Nonnull
+    default CompletionStage<List<Image>> getRandomImages(int count, @Nullable String type) {
+        return getRandomImages(count, type, null, null, null, null);
+    }
+
+    /**
+     * Retrieve several distinct random images matching the specified filters.
+     *
+     * @param count Amount of images to retrieve.
+     * @param tags Image tags.
+     *
+     * @return Distinct random images matching the filters.
+     *
+     * @see #getRandomImages(int, String, List, HiddenMode, NsfwFilter, FileType)
+     */
+    @CheckReturnValue
+    @Nonnull
+    default CompletionStage<List<Image>> getRandomImages(int count, @Nullable List<String> tags) {
+        return getRandomImages(count, null, tags, null, null, null);
+    }
+
     /**
      * Get an image's info from the ID.
      *
@@ -380,6 +533,35 @@ public interface ImageProvider {
     @Nonnull
     PendingRequest<Image> getImageById(@Nonnull String id);
 
+    /**
+     * Get the info of several images from their IDs. Cached images are returned without a request, and the
+     * rest are requested with at most {@code parallelism} requests running at once. A failed request doesn't
+     * fail the others, the image is just left out of the result.
+     *
+     * @param ids The image ids.
+     * @param parallelism Maximum amount of requests running at once.
+     *
+     * @return The image info, by id. Images that don't exist, or whose request failed, aren't included.
+     */
+    @CheckReturnValue
+    @Nonnull
+    CompletionStage<Map<String, Image>> getImagesById(@Nonnull Collection<String> ids, int parallelism);
+
+    /**
+     * Get the info of several images from their IDs, making at most 8 requests at once.
+     *
+     * @param ids The image ids.
+     *
+     * @return The image info, by id. Images that don't exist, or whose request failed, aren't included.
+     *
+     * @see #getImagesById(Collection, int)
+     */
+    @CheckReturnValue
+    @Nonnull
+    default CompletionStage<Map<String, Image>> getImagesById(@Nonnull Collection<String> ids) {
+        return getImagesById(ids, 8);
+    }
+
     /**
      * Downloads a given image.
      *
@@ -392,4 +574,74 @@ public interface ImageProvider {
     @CheckReturnValue
     @Nonnull
     <T> PendingRequest<T> download(Image image, InputStreamFunction<T> mapper);
+
+    /**
+     * Downloads a given image to a channel. If the image is cached, it's transferred directly
+     * from the {@link #getImageCache() cache}, which for file based caches avoids copying the
+     * data through java code entirely.
+     *
+     * @param image Image to download.
+     * @param target Channel to write the image to.
+     *
+     * @return The amount of bytes written.
+     */
+    @CheckReturnValue
+    @Nonnull
+    PendingRequest<Long> download(Image image, WritableByteChannel target);
+
+    /**
+     * Downloads a given preview image, through the {@link #getImageCache() image cache}.
+     *
+     * @param preview Preview image to download.
+     * @param mapper Maps the download input stream
+     * @param <T> Type returned by the mapper
+     *
+     * @return The downloaded data.
+     */
+    @CheckReturnValue
+    @Nonnull
+    <T> PendingRequest<T> download(PreviewImage preview, InputStreamFunction<T> mapper);
+
+    /**
+     * Saves all preview images of the given types to the {@link #getImageCache() image cache}, so later
+     * downloads of them don't need any request. Does nothing if no cache is configured.
+     *
+     * @param types Types whose previews should be downloaded, as returned by
+     *              {@link #getImageTypes(HiddenMode, NsfwFilter, PreviewMode) getImageTypes} with previews enabled.
+     *
+     * @return A stage completed once all previews were downloaded, successfully or not.
+     */
+    @Nonnull
+    CompletionStage<Void> prefetchPreviews(@Nonnull ImageTypes types);
+
+    /**
+     * Downloads several images through the {@link #getImageCache() cache}, with at most {@code parallelism}
+     * downloads running at once. A failed download doesn't affect the others.
+     *
+     * @param images Images to download.
+     * @param mapper Maps the download input streams.
+     * @param parallelism Maximum amount of downloads running at once.
+     * @param onResult Called with the result of each download, as soon as it completes. May be null.
+     * @param <T> Type returned by the mapper.
+     *
+     * @return The results of all downloads, in the same order as the images.
+     */
+    @Nonnull
+    <T> CompletionStage<List<DownloadResult<T>>> downloadAll(@Nonnull List<Image> images, @Nonnull InputStreamFunction<T> mapper, int parallelism, @Nullable Consumer<DownloadResult<T>> onResult);
+
+    /**
+     * Downloads several images through the {@link #getImageCache() cache}, with at most {@code parallelism}
+     * downloads running at once. A failed download doesn't affect the others.
+     *
+     * @param images Images to download.
+     * @param mapper Maps the download input streams.
+     * @param parallelism Maximum amount of downloads running at once.
+     * @param <T> Type returned by the mapper.
+     *
+     * @return The results of all downloads, in the same order as the images.
+     */
+    @Nonnull
+    default <T> CompletionStage<List<DownloadResult<T>>> downloadAll(@Nonnull List<Image> images, @Nonnull InputStreamFunction<T> mapper, int parallelism) {
+        return downloadAll(images, mapper, parallelism, null);
+    }
 }
@@ -8,17 +8,30 @@ import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 
 @SuppressWarnings("unused")
 public final class ImageTypes {
     private final List<String> types;
     private final List<PreviewImage> previewImages;
+    private final Map<String, String> typesByName;
+    private final Map<String, PreviewImage> previewImagesByType;
 
     private ImageTypes(List<String> types, List<PreviewImage> previewImages) {
         this.types = types;
         this.previewImages = previewImages;
+        this.typesByName = new HashMap<>(types.size() * 2);
+        for(String type : types) {
+            typesByName.putIfAbsent(type.toLowerCase(Locale.ROOT), type);
+        }
+        this.previewImagesByType = new HashMap<>(previewImages.size() * 2);
+        for(PreviewImage i : previewImages) {
+            previewImagesByType.putIfAbsent(i.getType().toLowerCase(Locale.ROOT), i);
+        }
     }
 
     /**
@@ -47,10 +60,18 @@ public final class ImageTypes {
      * @return An optional containing an existing preview for the type, or an empty optional.
      */
     public Optional<PreviewImage> getPreviewImageByType(String type) {
-        for(PreviewImage i : previewImages) {
-            if(i.getType().equalsIgnoreCase(type)) return Optional.of(i);
-        }
-        return Optional.empty();
+        return Optional.ofNullable(previewImagesByType.get(type.toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * Finds a type, ignoring case.
+     *
+     * @param type The type to search for.
+     *
+     * @return An optional containing the type as returned by the API, or an empty optional if there's no such type.
+     */
+    public Optional<String> findType(String type) {
+        return Optional.ofNullable(typesByName.get(type.toLowerCase(Locale.ROOT)));
     }
 
     @Nonnull
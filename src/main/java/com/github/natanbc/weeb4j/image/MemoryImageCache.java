@@ -0,0 +1,101 @@
+package com.github.natanbc.weeb4j.image;
+
+import com.github.natanbc.weeb4j.util.IOUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * In memory image cache, bounded by the total size of the images. Least recently used images are evicted first.
+ */
+class MemoryImageCache implements ImageCache {
+    private final LinkedHashMap<String, byte[]> images = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private final int bufferSize;
+    private long size;
+
+    MemoryImageCache(long maxBytes, int bufferSize) {
+        if(maxBytes < 1) {
+            throw new IllegalArgumentException("Max bytes < 1");
+        }
+        if(bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size < 1");
+        }
+        this.maxBytes = maxBytes;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    @Nullable
+    public InputStream retrieve(@Nonnull String name) {
+        byte[] data;
+        synchronized(images) {
+            data = images.get(name);
+        }
+        return data == null ? null : new ByteArrayInputStream(data);
+    }
+
+    @Override
+    public long transferTo(@Nonnull String name, @Nonnull WritableByteChannel target) throws IOException {
+        byte[] data;
+        synchronized(images) {
+            data = images.get(name);
+        }
+        return data == null ? -1 : ByteBufferInputStream.write(ByteBuffer.wrap(data), target);
+    }
+
+    @Override
+    @Nonnull
+    public CompletionStage<InputStream> retrieveAsync(@Nonnull String name, @Nonnull Executor executor) {
+        //never blocks
+        return CompletableFuture.completedFuture(retrieve(name));
+    }
+
+    @Override
+    public void save(@Nonnull String name, @Nonnull InputStream in) throws IOException {
+        byte[] data;
+        try(InputStream i = in) {
+            data = IOUtils.readFully(bufferSize).accept(i);
+        }
+        put(name, data);
+    }
+
+    @Override
+    public void purge(@Nonnull String name) {
+        synchronized(images) {
+            byte[] old = images.remove(name);
+            if(old != null) {
+                size -= old.length;
+            }
+        }
+    }
+
+    private void put(String name, byte[] data) {
+        synchronized(images) {
+            byte[] old = images.remove(name);
+            if(old != null) {
+                size -= old.length;
+            }
+            //images that would evict everything else aren't worth keeping
+            if(data.length > maxBytes) return;
+            images.put(name, data);
+            size += data.length;
+            Iterator<Map.Entry<String, byte[]>> it = images.entrySet().iterator();
+            while(size > maxBytes && it.hasNext()) {
+                size -= it.next().getValue().length;
+                it.remove();
+            }
+        }
+    }
+}
@@ -3,6 +3,10 @@ package com.github.natanbc.weeb4j.image;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 enum NoopImageCache implements ImageCache {
@@ -14,6 +18,18 @@ enum NoopImageCache implements ImageCache {
         return null;
     }
 
+    @Override
+    public long transferTo(@Nonnull String name, @Nonnull WritableByteChannel target) {
+        return -1;
+    }
+
+    @Override
+    @Nonnull
+    public CompletionStage<InputStream> retrieveAsync(@Nonnull String name, @Nonnull Executor executor) {
+        //never blocks
+        return CompletableFuture.completedFuture(retrieve(name));
+    }
+
     @Override
     public void save(@Nonnull String name, @Nonnull InputStream in) {
         //noop
@@ -24,9 +40,40 @@ enum NoopImageCache implements ImageCache {
         //noop
     }
 
+    @Override
+    @Nonnull
+    public CacheWriter openWriter(@Nonnull String name) {
+        return NoopCacheWriter.INSTANCE;
+    }
+
+    @Override
+    @Nonnull
+    public InputStream fill(@Nonnull String name, @Nonnull InputStream in) {
+        return in;
+    }
+
     @Override
     @Nonnull
     public InputStream retrieveOrCache(@Nonnull String name, @Nonnull Supplier<InputStream> request) {
         return request.get();
     }
+
+    private enum NoopCacheWriter implements CacheWriter {
+        INSTANCE;
+
+        @Override
+        public void write(@Nonnull byte[] data, int offset, int length) {
+            //noop
+        }
+
+        @Override
+        public void commit() {
+            //noop
+        }
+
+        @Override
+        public void close() {
+            //noop
+        }
+    }
 }
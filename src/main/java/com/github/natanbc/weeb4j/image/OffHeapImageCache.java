@@ -0,0 +1,399 @@
+package com.github.natanbc.weeb4j.image;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * In memory image cache that stores images outside the java heap, in direct byte buffer slabs.
+ *
+ * Each slab is split into chunks of a single size class, from {@value #MIN_CHUNK_SIZE} to {@value #MAX_CHUNK_SIZE} bytes.
+ * Images are stored as a sequence of {@value #MAX_CHUNK_SIZE} byte chunks, followed by the smallest chunk that fits the
+ * remaining bytes. Slabs with no used chunks are reused by any size class. When no chunk is available, least recently
+ * used images are evicted. Images being read are only freed once all streams reading them are closed. Images bigger
+ * than a quarter of the cache aren't cached, so a single image can't flush most of it, and nothing is evicted for an
+ * image until it was fully read.
+ */
+class OffHeapImageCache implements ImageCache {
+    private static final int SLAB_SIZE = 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 1024;
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_CHUNK_SIZE / MIN_CHUNK_SIZE) + 1;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<Slab>[] availableSlabs = new ArrayDeque[SIZE_CLASSES];
+    private final ArrayDeque<ByteBuffer> freeSlabs = new ArrayDeque<>();
+    private final int maxSlabs;
+    private final long maxImageBytes;
+    private int allocatedSlabs;
+
+    OffHeapImageCache(long maxBytes) {
+        if(maxBytes < SLAB_SIZE) {
+            throw new IllegalArgumentException("Max bytes < " + SLAB_SIZE);
+        }
+        this.maxSlabs = (int)Math.min(Integer.MAX_VALUE, maxBytes / SLAB_SIZE);
+        this.maxImageBytes = Math.min(Integer.MAX_VALUE, Math.max(MAX_CHUNK_SIZE, (long)maxSlabs * SLAB_SIZE / 4));
+        for(int i = 0; i < SIZE_CLASSES; i++) {
+            availableSlabs[i] = new ArrayDeque<>();
+        }
+    }
+
+    @Override
+    @Nullable
+    public InputStream retrieve(@Nonnull String name) {
+        Entry entry;
+        synchronized(this) {
+            entry = entries.get(name);
+            if(entry == null) return null;
+            entry.references++;
+        }
+        return new EntryInputStream(entry);
+    }
+
+    @Override
+    public long transferTo(@Nonnull String name, @Nonnull WritableByteChannel target) throws IOException {
+        Entry entry;
+        synchronized(this) {
+            entry = entries.get(name);
+            if(entry == null) return -1;
+            entry.references++;
+        }
+        try {
+            long remaining = entry.length;
+            for(Chunk c : entry.chunks) {
+                ByteBuffer b = c.buffer();
+                b.limit((int)Math.min(b.capacity(), remaining));
+                remaining -= ByteBufferInputStream.write(b, target);
+            }
+            return entry.length;
+        } finally {
+            release(entry);
+        }
+    }
+
+    @Override
+    @Nonnull
+    public CompletionStage<InputStream> retrieveAsync(@Nonnull String name, @Nonnull Executor executor) {
+        //never blocks
+        return CompletableFuture.completedFuture(retrieve(name));
+    }
+
+    @Override
+    public void save(@Nonnull String name, @Nonnull InputStream in) throws IOException {
+        ChunkWriter writer = new ChunkWriter();
+        List<Chunk> chunks = writer.chunks;
+        ByteArrayOutputStream overflow = null;
+        int length = 0;
+        try(InputStream i = in) {
+            byte[] tmp = new byte[8192];
+            int r;
+            while((r = i.read(tmp)) != -1) {
+                //images that would evict most of the cache aren't worth keeping
+                if(length + (long)r > maxImageBytes) {
+                    free(chunks);
+                    return;
+                }
+                length += r;
+                //nothing is evicted until the whole image was read and is known to be kept,
+                //bytes that don't fit in the free memory are kept on the heap until then
+                int w = overflow == null ? writer.write(tmp, 0, r, false) : 0;
+                if(w < r) {
+                    if(overflow == null) {
+                        overflow = new ByteArrayOutputStream();
+                    }
+                    overflow.write(tmp, w, r - w);
+                }
+            }
+            if(overflow != null) {
+                byte[] rest = overflow.toByteArray();
+                if(writer.write(rest, 0, rest.length, true) < rest.length) {
+                    //everything is in use, don't cache this image
+                    free(chunks);
+                    return;
+                }
+            }
+            //move the last partial chunk to a smaller size class, if it fits in one
+            Chunk current = writer.current;
+            int used = current == null ? 0 : writer.buffer.position();
+            if(current != null && used <= MAX_CHUNK_SIZE / 2) {
+                Chunk tail = allocate(sizeClass(used));
+                if(tail != null) {
+                    ByteBuffer src = current.buffer();
+                    src.limit(used);
+                    tail.buffer().put(src);
+                    chunks.set(chunks.size() - 1, tail);
+                    free(current);
+                }
+            }
+        } catch(IOException|RuntimeException e) {
+            free(chunks);
+            throw e;
+        }
+        Entry entry = new Entry(chunks.toArray(new Chunk[0]), length);
+        synchronized(this) {
+            Entry old = entries.put(name, entry);
+            if(old != null) {
+                evict(old);
+            }
+        }
+    }
+
+    @Override
+    public void purge(@Nonnull String name) {
+        synchronized(this) {
+            Entry entry = entries.remove(name);
+            if(entry != null) {
+                evict(entry);
+            }
+        }
+    }
+
+    private synchronized Chunk allocate(int sizeClass) {
+        while(true) {
+            Chunk chunk = tryAllocate(sizeClass);
+            if(chunk != null) return chunk;
+            Iterator<Entry> it = entries.values().iterator();
+            if(!it.hasNext()) return null;
+            Entry eldest = it.next();
+            it.remove();
+            evict(eldest);
+        }
+    }
+
+    //must be called with the lock held
+    private Chunk tryAllocate(int sizeClass) {
+        ArrayDeque<Slab> available = availableSlabs[sizeClass];
+        Slab slab = available.peekFirst();
+        if(slab == null) {
+            ByteBuffer memory = freeSlabs.pollFirst();
+            if(memory == null) {
+                if(allocatedSlabs >= maxSlabs) return null;
+                memory = ByteBuffer.allocateDirect(SLAB_SIZE);
+                allocatedSlabs++;
+            }
+            slab = new Slab(memory, sizeClass);
+            available.addFirst(slab);
+        }
+        Chunk chunk = slab.allocate();
+        if(slab.isFull()) {
+            available.removeFirst();
+        }
+        return chunk;
+    }
+
+    //must be called with the lock held
+    private void evict(Entry entry) {
+        entry.evicted = true;
+        if(entry.references == 0) {
+            freeChunks(entry.chunks);
+        }
+    }
+
+    private synchronized void release(Entry entry) {
+        entry.references--;
+        if(entry.evicted && entry.references == 0) {
+            freeChunks(entry.chunks);
+        }
+    }
+
+    private synchronized void free(List<Chunk> chunks) {
+        for(Chunk c : chunks) {
+            free(c);
+        }
+    }
+
+    //must be called with the lock held
+    private void freeChunks(Chunk[] chunks) {
+        for(Chunk c : chunks) {
+            free(c);
+        }
+    }
+
+    private synchronized void free(Chunk chunk) {
+        Slab slab = chunk.slab;
+        boolean wasFull = slab.isFull();
+        slab.free(chunk.offset);
+        ArrayDeque<Slab> available = availableSlabs[slab.sizeClass];
+        if(slab.isEmpty()) {
+            available.remove(slab);
+            freeSlabs.addFirst(slab.memory);
+        } else if(wasFull) {
+            available.addLast(slab);
+        }
+    }
+
+    private static int sizeClass(int size) {
+        int chunkSize = MIN_CHUNK_SIZE;
+        int sizeClass = 0;
+        while(chunkSize < size) {
+            chunkSize <<= 1;
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    //writes images to a sequence of the biggest chunks
+    private class ChunkWriter {
+        final List<Chunk> chunks = new ArrayList<>();
+        Chunk current;
+        ByteBuffer buffer;
+
+        //returns how many bytes were written, less than len if no more chunks are available
+        int write(byte[] b, int off, int len, boolean evict) {
+            int written = 0;
+            while(written < len) {
+                if(buffer == null || !buffer.hasRemaining()) {
+                    Chunk chunk;
+                    if(evict) {
+                        chunk = allocate(SIZE_CLASSES - 1);
+                    } else {
+                        synchronized(OffHeapImageCache.this) {
+                            chunk = tryAllocate(SIZE_CLASSES - 1);
+                        }
+                    }
+                    if(chunk == null) break;
+                    chunks.add(chunk);
+                    current = chunk;
+                    buffer = chunk.buffer();
+                }
+                int w = Math.min(len - written, buffer.remaining());
+                buffer.put(b, off + written, w);
+                written += w;
+            }
+            return written;
+        }
+    }
+
+    private static class Slab {
+        final ByteBuffer memory;
+        final int sizeClass;
+        final int chunkSize;
+        final int[] freeOffsets;
+        int freeCount;
+
+        Slab(ByteBuffer memory, int sizeClass) {
+            this.memory = memory;
+            this.sizeClass = sizeClass;
+            this.chunkSize = MIN_CHUNK_SIZE << sizeClass;
+            this.freeOffsets = new int[SLAB_SIZE / chunkSize];
+            for(int i = 0; i < freeOffsets.length; i++) {
+                freeOffsets[i] = (freeOffsets.length - i - 1) * chunkSize;
+            }
+            this.freeCount = freeOffsets.length;
+        }
+
+        Chunk allocate() {
+            return new Chunk(this, freeOffsets[--freeCount]);
+        }
+
+        void free(int offset) {
+            freeOffsets[freeCount++] = offset;
+        }
+
+        boolean isFull() {
+            return freeCount == 0;
+        }
+
+        boolean isEmpty() {
+            return freeCount == freeOffsets.length;
+        }
+    }
+
+    private static class Chunk {
+        final Slab slab;
+        final int offset;
+
+        Chunk(Slab slab, int offset) {
+            this.slab = slab;
+            this.offset = offset;
+        }
+
+        ByteBuffer buffer() {
+            ByteBuffer b = slab.memory.duplicate();
+            b.position(offset);
+            b.limit(offset + slab.chunkSize);
+            return b.slice();
+        }
+    }
+
+    private static class Entry {
+        final Chunk[] chunks;
+        final int length;
+        //guarded by the cache lock
+        int references;
+        boolean evicted;
+
+        Entry(Chunk[] chunks, int length) {
+            this.chunks = chunks;
+            this.length = length;
+        }
+    }
+
+    private class EntryInputStream extends InputStream {
+        private final Entry entry;
+        private int chunk;
+        private int remaining;
+        private ByteBuffer current;
+        private boolean closed;
+
+        EntryInputStream(Entry entry) {
+            this.entry = entry;
+            this.remaining = entry.length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuffer b = current();
+            if(b == null) return -1;
+            remaining--;
+            return b.get() & 0xFF;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+            if(len == 0) return 0;
+            ByteBuffer buffer = current();
+            if(buffer == null) return -1;
+            int r = Math.min(len, buffer.remaining());
+            buffer.get(b, off, r);
+            remaining -= r;
+            return r;
+        }
+
+        @Override
+        public int available() {
+            return closed ? 0 : remaining;
+        }
+
+        @Override
+        public void close() {
+            if(closed) return;
+            closed = true;
+            current = null;
+            release(entry);
+        }
+
+        private ByteBuffer current() throws IOException {
+            if(closed) throw new IOException("Stream closed");
+            if(remaining == 0) return null;
+            if(current == null || !current.hasRemaining()) {
+                current = entry.chunks[chunk++].buffer();
+                current.limit(Math.min(current.capacity(), remaining));
+            }
+            return current;
+        }
+    }
+}
@@ -95,6 +95,7 @@ public final class PreviewImage {
 
     /**
      * Applies a given function to an InputStream of this image's bytes, returning the result.
+     * The image is downloaded through the {@link ImageProvider#getImageCache() image cache}.
      *
      * @param function Mapper to convert the InputStream to another form of data. <strong>The input stream is closed after the mapper returns.</strong>
      * @param <T> Type returned by the mapper.
@@ -102,7 +103,7 @@ public final class PreviewImage {
      * @return A request for this image's bytes.
      */
     public <T> PendingRequest<T> download(InputStreamFunction<T> function) {
-        return api.download(url, function);
+        return api.getImageProvider().download(this, function);
     }
 
     @Nonnull
@@ -0,0 +1,336 @@
+package com.github.natanbc.weeb4j.image;
+
+import com.github.natanbc.weeb4j.internal.Weeb4JImpl;
+import com.github.natanbc.weeb4j.util.IOUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Image cache that appends images to large, memory mapped segment files.
+ *
+ * Each record is laid out as {@code [magic:int][state:byte][name length:short][data length:int][name][data]}.
+ * The index is rebuilt on startup by scanning the segments in creation order, so no separate
+ * index file has to be kept in sync.
+ */
+class SegmentImageCache implements ImageCache {
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.bin");
+    private static final int MAGIC = 0x57344A43;
+    private static final byte LIVE = 1;
+    private static final byte DEAD = 0;
+    private static final int HEADER_SIZE = 4 + 1 + 2 + 4;
+    private static final int STATE_OFFSET = 4;
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final Set<Integer> pendingCompactions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r->{
+        Thread t = new Thread(r, "Weeb4J-SegmentCompactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Object writeLock = new Object();
+    private final File directory;
+    private final int segmentSize;
+    private final int bufferSize;
+    private Segment active;
+    private int nextSegmentId;
+
+    SegmentImageCache(File directory, int segmentSize, int bufferSize) throws IOException {
+        if(directory.isFile()) {
+            throw new IOException("Directory is a file: " + directory.getAbsolutePath());
+        }
+        if(!directory.exists()) {
+            if(!directory.mkdirs()) {
+                throw new IOException("Unable to create directory: " + directory.getAbsolutePath());
+            }
+        }
+        if(!directory.canRead()) {
+            throw new IOException("Unable to read directory: " + directory.getAbsolutePath());
+        }
+        if(!directory.canWrite()) {
+            throw new IOException("Unable to write directory: " + directory.getAbsolutePath());
+        }
+        if(segmentSize < HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size < " + HEADER_SIZE);
+        }
+        if(bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size < 1");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.bufferSize = bufferSize;
+        load();
+    }
+
+    @Override
+    @Nullable
+    public InputStream retrieve(@Nonnull String name) {
+        Location location = index.get(name);
+        if(location == null) return null;
+        return new ByteBufferInputStream(location.data());
+    }
+
+    @Override
+    public long transferTo(@Nonnull String name, @Nonnull WritableByteChannel target) throws IOException {
+        Location location = index.get(name);
+        if(location == null) return -1;
+        return ByteBufferInputStream.write(location.data(), target);
+    }
+
+    @Override
+    @Nonnull
+    public CompletionStage<InputStream> retrieveAsync(@Nonnull String name, @Nonnull Executor executor) {
+        //never blocks
+        return CompletableFuture.completedFuture(retrieve(name));
+    }
+
+    @Override
+    public void save(@Nonnull String name, @Nonnull InputStream in) throws IOException {
+        byte[] data;
+        try(InputStream i = in) {
+            data = IOUtils.readFully(bufferSize).accept(i);
+        }
+        synchronized(writeLock) {
+            Location location = append(name, ByteBuffer.wrap(data));
+            Location old = index.put(name, location);
+            if(old != null) {
+                markDead(old);
+            }
+        }
+    }
+
+    @Override
+    public void purge(@Nonnull String name) {
+        Location location = index.remove(name);
+        if(location == null) return;
+        synchronized(writeLock) {
+            markDead(location);
+        }
+    }
+
+    //must be called with writeLock held
+    private Location append(String name, ByteBuffer data) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if(nameBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Name too long");
+        }
+        long recordSize = (long)HEADER_SIZE + nameBytes.length + data.remaining();
+        if(recordSize > Integer.MAX_VALUE) {
+            throw new IOException("Image too large to be stored in a segment");
+        }
+        if(active == null || active.remaining() < recordSize) {
+            Segment previous = active;
+            active = createSegment((int)Math.max(segmentSize, recordSize));
+            if(previous != null) {
+                maybeCompact(previous);
+            }
+        }
+        Segment segment = active;
+        int offset = segment.position;
+        int length = data.remaining();
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + STATE_OFFSET);
+        buffer.put(LIVE);
+        buffer.putShort((short)nameBytes.length);
+        buffer.putInt(length);
+        buffer.put(nameBytes);
+        buffer.put(data);
+        //write the magic last, so a partially written record is ignored when loading
+        segment.buffer.putInt(offset, MAGIC);
+        segment.position += (int)recordSize;
+        return new Location(segment, offset, (int)recordSize, offset + HEADER_SIZE + nameBytes.length, length);
+    }
+
+    //must be called with writeLock held
+    private void markDead(Location location) {
+        Segment segment = location.segment;
+        segment.buffer.put(location.offset + STATE_OFFSET, DEAD);
+        segment.dead.addAndGet(location.size);
+        if(segment != active) {
+            maybeCompact(segment);
+        }
+    }
+
+    private void maybeCompact(Segment segment) {
+        if(!segments.containsKey(segment.id)) return;
+        if(segment.dead.get() < segment.position * COMPACTION_THRESHOLD) return;
+        if(!pendingCompactions.add(segment.id)) return;
+        compactor.execute(()->{
+            try {
+                compact(segment);
+            } catch(IOException e) {
+                Weeb4JImpl.LOGGER.error("Error compacting segment {}", segment.file, e);
+            } finally {
+                pendingCompactions.remove(segment.id);
+            }
+        });
+    }
+
+    private void compact(Segment segment) throws IOException {
+        for(Map.Entry<String, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            if(location.segment != segment) continue;
+            synchronized(writeLock) {
+                Location moved = append(entry.getKey(), location.data());
+                if(index.replace(entry.getKey(), location, moved)) {
+                    segment.buffer.put(location.offset + STATE_OFFSET, DEAD);
+                } else {
+                    //purged or overwritten while we were copying
+                    markDead(moved);
+                }
+            }
+        }
+        segments.remove(segment.id);
+        //readers might still hold slices of the mapping, which stays valid until it's garbage collected
+        if(!segment.file.delete()) {
+            segment.file.deleteOnExit();
+        }
+    }
+
+    private Segment createSegment(int capacity) throws IOException {
+        int id = nextSegmentId++;
+        Segment segment = openSegment(id, new File(directory, "segment-" + id + ".bin"), capacity);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void load() throws IOException {
+        File[] files = directory.listFiles();
+        if(files == null) {
+            throw new IOException("Unable to list directory: " + directory.getAbsolutePath());
+        }
+        Arrays.sort(files, (a, b)->Integer.compare(segmentId(a), segmentId(b)));
+        Segment last = null;
+        for(File f : files) {
+            int id = segmentId(f);
+            if(id < 0) continue;
+            long length = f.length();
+            if(length > Integer.MAX_VALUE) {
+                throw new IOException("Segment too large: " + f.getAbsolutePath());
+            }
+            Segment segment = openSegment(id, f, (int)length);
+            scan(segment);
+            segments.put(id, segment);
+            nextSegmentId = id + 1;
+            last = segment;
+        }
+        synchronized(writeLock) {
+            active = last;
+            for(Segment s : segments.values()) {
+                if(s != active) maybeCompact(s);
+            }
+        }
+    }
+
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+        int capacity = buffer.capacity();
+        while(capacity - position >= HEADER_SIZE && buffer.getInt(position) == MAGIC) {
+            byte state = buffer.get(position + STATE_OFFSET);
+            int nameLength = buffer.getShort(position + STATE_OFFSET + 1);
+            int length = buffer.getInt(position + STATE_OFFSET + 3);
+            long size = (long)HEADER_SIZE + nameLength + length;
+            if(nameLength < 0 || length < 0 || size > capacity - position) break;
+            if(state == LIVE) {
+                byte[] nameBytes = new byte[nameLength];
+                ByteBuffer b = buffer.duplicate();
+                b.position(position + HEADER_SIZE);
+                b.get(nameBytes);
+                Location location = new Location(segment, position, (int)size, position + HEADER_SIZE + nameLength, length);
+                Location old = index.put(new String(nameBytes, StandardCharsets.UTF_8), location);
+                if(old != null) {
+                    old.segment.buffer.put(old.offset + STATE_OFFSET, DEAD);
+                    old.segment.dead.addAndGet(old.size);
+                }
+            } else {
+                segment.dead.addAndGet(size);
+            }
+            position += (int)size;
+        }
+        segment.position = position;
+    }
+
+    private static Segment openSegment(int id, File file, int capacity) throws IOException {
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            //the mapping outlives the file handle, so it can be closed right away
+            return new Segment(id, file, buffer);
+        }
+    }
+
+    private static int segmentId(File file) {
+        Matcher m = SEGMENT_NAME.matcher(file.getName());
+        if(!m.matches()) return -1;
+        try {
+            return Integer.parseInt(m.group(1));
+        } catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Segment {
+        final AtomicLong dead = new AtomicLong();
+        final int id;
+        final File file;
+        final MappedByteBuffer buffer;
+        //guarded by writeLock
+        int position;
+
+        Segment(int id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        int remaining() {
+            return buffer.capacity() - position;
+        }
+    }
+
+    private static class Location {
+        final Segment segment;
+        final int offset;
+        final int size;
+        final int dataOffset;
+        final int length;
+
+        Location(Segment segment, int offset, int size, int dataOffset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+            this.dataOffset = dataOffset;
+            this.length = length;
+        }
+
+        ByteBuffer data() {
+            ByteBuffer b = segment.buffer.duplicate();
+            b.position(dataOffset);
+            b.limit(dataOffset + length);
+            return b.slice();
+        }
+    }
+}
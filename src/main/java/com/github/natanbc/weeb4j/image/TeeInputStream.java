@@ -0,0 +1,94 @@
+package com.github.natanbc.weeb4j.image;
+
+import com.github.natanbc.weeb4j.internal.Weeb4JImpl;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that writes everything read to a cache writer, committing it once the source is fully read.
+ *
+ * If the stream is closed before the end is reached, the rest of the source is read so the cached image is complete.
+ * Failures writing to the cache are logged and don't affect the reader.
+ */
+class TeeInputStream extends InputStream {
+    private final InputStream source;
+    private final CacheWriter writer;
+    private boolean writing = true;
+    private boolean done;
+
+    TeeInputStream(InputStream source, CacheWriter writer) {
+        this.source = source;
+        this.writer = writer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int r;
+        while((r = read(b, 0, 1)) == 0);
+        return r == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+        int r;
+        try {
+            r = source.read(b, off, len);
+        } catch(IOException e) {
+            abort();
+            throw e;
+        }
+        if(r == -1) {
+            finish();
+        } else if(writing) {
+            try {
+                writer.write(b, off, r);
+            } catch(IOException e) {
+                Weeb4JImpl.LOGGER.error("Error writing image to cache", e);
+                abort();
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return source.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(!done && writing) {
+            byte[] buffer = new byte[4096];
+            try {
+                while(read(buffer, 0, buffer.length) != -1);
+            } catch(IOException ignored) {
+                //the cache write was already aborted by read
+            }
+        }
+        abort();
+        source.close();
+    }
+
+    private void finish() {
+        if(done) return;
+        done = true;
+        if(!writing) return;
+        writing = false;
+        try {
+            writer.commit();
+        } catch(IOException e) {
+            Weeb4JImpl.LOGGER.error("Error writing image to cache", e);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void abort() {
+        if(!writing) return;
+        writing = false;
+        writer.close();
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.natanbc.weeb4j.image;
+
+import com.github.natanbc.weeb4j.util.IOUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Image cache composed of a faster upper tier in front of a slower lower tier.
+ *
+ * Images found only in the lower tier are promoted to the upper tier when retrieved, and
+ * saved images are written to both tiers.
+ */
+class TieredImageCache implements ImageCache {
+    private final ImageCache upper;
+    private final ImageCache lower;
+    private final int bufferSize;
+
+    TieredImageCache(ImageCache upper, ImageCache lower, int bufferSize) {
+        if(bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size < 1");
+        }
+        this.upper = upper;
+        this.lower = lower;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    @Nullable
+    public InputStream retrieve(@Nonnull String name) throws IOException {
+        InputStream in = upper.retrieve(name);
+        if(in != null) return in;
+        in = lower.retrieve(name);
+        if(in == null) return null;
+        upper.save(name, in);
+        in = upper.retrieve(name);
+        //the upper tier might not keep the image, eg if it's too big
+        return in == null ? lower.retrieve(name) : in;
+    }
+
+    @Override
+    public long transferTo(@Nonnull String name, @Nonnull WritableByteChannel target) throws IOException {
+        long transferred = upper.transferTo(name, target);
+        if(transferred != -1) return transferred;
+        //promote the image, if it exists
+        InputStream in = retrieve(name);
+        if(in == null) return -1;
+        in.close();
+        transferred = upper.transferTo(name, target);
+        return transferred == -1 ? lower.transferTo(name, target) : transferred;
+    }
+
+    @Override
+    public void save(@Nonnull String name, @Nonnull InputStream in) throws IOException {
+        byte[] data;
+        try(InputStream i = in) {
+            data = IOUtils.readFully(bufferSize).accept(i);
+        }
+        lower.save(name, new ByteArrayInputStream(data));
+        upper.save(name, new ByteArrayInputStream(data));
+    }
+
+    @Override
+    public void purge(@Nonnull String name) throws IOException {
+        upper.purge(name);
+        lower.purge(name);
+    }
+}
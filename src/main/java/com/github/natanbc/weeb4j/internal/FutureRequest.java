@@ -0,0 +1,89 @@
+package com.github.natanbc.weeb4j.internal;
+
+import com.github.natanbc.reliqua.Reliqua;
+import com.github.natanbc.reliqua.request.PendingRequest;
+import com.github.natanbc.reliqua.request.RequestException;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Request whose result is computed by a {@link CompletionStage} instead of a single http call, for requests
+ * that might be answered from a cache or need more than one call.
+ *
+ * {@link #async(Consumer, Consumer) async}, {@link #submit() submit} and {@link #execute() execute} all start
+ * the same stage, so they behave the same way. A new stage is started every time the request is executed.
+ *
+ * @param <T> Type of the result.
+ */
+public class FutureRequest<T> extends PendingRequest<T> {
+    private final Supplier<? extends CompletionStage<T>> start;
+
+    public FutureRequest(@Nonnull Reliqua api, @Nonnull Request.Builder request, @Nonnull Supplier<? extends CompletionStage<T>> start) {
+        super(api, request);
+        this.start = start;
+    }
+
+    @Nullable
+    @Override
+    protected T onSuccess(@Nonnull Response response) {
+        //never called, no http request is made by this class
+        return null;
+    }
+
+    @Override
+    public void async(@Nullable Consumer<T> onSuccess, @Nullable Consumer<RequestException> onError) {
+        start().whenComplete((result, error)->{
+            if(error != null) {
+                if(onError != null) {
+                    onError.accept(toRequestException(error));
+                }
+            } else if(onSuccess != null) {
+                onSuccess.accept(result);
+            }
+        });
+    }
+
+    @Nonnull
+    @Override
+    public CompletionStage<T> submit() {
+        return start();
+    }
+
+    @Override
+    public T execute() {
+        try {
+            return start().toCompletableFuture().join();
+        } catch(CompletionException e) {
+            throw toRequestException(e);
+        }
+    }
+
+    private CompletionStage<T> start() {
+        try {
+            return start.get();
+        } catch(RuntimeException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    static RequestException toRequestException(Throwable t) {
+        if(t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if(t instanceof UncheckedIOException) {
+            t = t.getCause();
+        }
+        return t instanceof RequestException ? (RequestException)t : new RequestException(t);
+    }
+}
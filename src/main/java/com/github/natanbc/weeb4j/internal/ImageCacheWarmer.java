@@ -0,0 +1,116 @@
+package com.github.natanbc.weeb4j.internal;
+
+import com.github.natanbc.weeb4j.image.Image;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads images ahead of time, so they're saved to the image cache before being requested.
+ *
+ * At most {@code maxConcurrency} downloads run at once, the rest wait in a queue. Images already cached are
+ * skipped, and only bytes read from the network are throttled to {@code maxBytesPerSecond} in total,
+ * by pausing the thread reading the response.
+ */
+class ImageCacheWarmer {
+    private final Queue<Task> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Weeb4JImpl.ImageProviderImpl provider;
+    private final int maxConcurrency;
+    private final long maxBytesPerSecond;
+    //guarded by this
+    private long nextRead;
+
+    ImageCacheWarmer(@Nonnull Weeb4JImpl.ImageProviderImpl provider, int maxConcurrency, long maxBytesPerSecond) {
+        if(maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency < 1");
+        }
+        if(maxBytesPerSecond < 0) {
+            throw new IllegalArgumentException("Max bytes per second < 0");
+        }
+        this.provider = provider;
+        this.maxConcurrency = maxConcurrency;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.nextRead = System.nanoTime();
+    }
+
+    /**
+     * Queues an image to be downloaded.
+     *
+     * @param image Image to download.
+     *
+     * @return A future completed once the download finishes, successfully or not.
+     */
+    @Nonnull
+    CompletableFuture<Void> warm(@Nonnull Image image) {
+        Task task = new Task(image);
+        queue.add(task);
+        drain();
+        return task.future;
+    }
+
+    private void drain() {
+        while(!queue.isEmpty()) {
+            int r = running.get();
+            if(r >= maxConcurrency) return;
+            if(!running.compareAndSet(r, r + 1)) continue;
+            Task task = queue.poll();
+            if(task == null) {
+                running.decrementAndGet();
+                continue;
+            }
+            provider.warm(task.image, this::consume).whenComplete((result, error)->{
+                if(error != null) {
+                    Weeb4JImpl.LOGGER.debug("Error warming image cache with {}", task.image.getId(), error);
+                }
+                running.decrementAndGet();
+                task.future.complete(null);
+                drain();
+            });
+        }
+    }
+
+    private Void consume(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        int r;
+        while((r = in.read(buffer)) != -1) {
+            throttle(r);
+        }
+        return null;
+    }
+
+    private void throttle(int bytes) throws IOException {
+        if(maxBytesPerSecond == 0) return;
+        long delay;
+        synchronized(this) {
+            long now = System.nanoTime();
+            long start = nextRead - now > 0 ? nextRead : now;
+            nextRead = start + bytes * TimeUnit.SECONDS.toNanos(1) / maxBytesPerSecond;
+            delay = start - now;
+        }
+        if(delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    private static class Task {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final Image image;
+
+        Task(Image image) {
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.natanbc.weeb4j.internal;
+
+import com.github.natanbc.weeb4j.image.HiddenMode;
+import com.github.natanbc.weeb4j.image.ImageCatalog;
+import com.github.natanbc.weeb4j.image.ImageTypes;
+import com.github.natanbc.weeb4j.image.NsfwFilter;
+import com.github.natanbc.weeb4j.image.PreviewImage;
+import com.github.natanbc.weeb4j.image.PreviewMode;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+class ImageCatalogImpl implements ImageCatalog {
+    private final Map<Filters, Entry> entries = new ConcurrentHashMap<>();
+    private final Weeb4JImpl.ImageProviderImpl provider;
+    //guarded by this
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> refreshTask;
+    private long refreshIntervalNanos = TimeUnit.HOURS.toNanos(1);
+
+    ImageCatalogImpl(@Nonnull Weeb4JImpl.ImageProviderImpl provider) {
+        this.provider = provider;
+    }
+
+    @Nonnull
+    @Override
+    public CompletionStage<Void> load(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw) {
+        Filters filters = new Filters(hidden, nsfw);
+        //revalidate existing data, so unchanged tags and types aren't downloaded again
+        Entry old = entries.get(filters);
+        CompletableFuture<Validated<List<String>>> tags = provider.getImageTags(hidden, nsfw, old == null ? null : old.tags)
+                .submit().toCompletableFuture();
+        CompletableFuture<Validated<ImageTypes>> types = provider.getImageTypes(hidden, nsfw, PreviewMode.SHOW, old == null ? null : old.types)
+                .submit().toCompletableFuture();
+        return tags.thenCombine(types, (t, i)->{
+            if(t == null || i == null) {
+                throw new IllegalStateException("Empty response for hidden = " + hidden + ", nsfw = " + nsfw);
+            }
+            entries.put(filters, new Entry(t, i));
+            scheduleRefresh();
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isLoaded(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw) {
+        return entries.containsKey(new Filters(hidden, nsfw));
+    }
+
+    @Nullable
+    @Override
+    public List<String> getTags(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw) {
+        Entry e = entries.get(new Filters(hidden, nsfw));
+        return e == null ? null : e.tags.value;
+    }
+
+    @Nullable
+    @Override
+    public ImageTypes getImageTypes(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw) {
+        Entry e = entries.get(new Filters(hidden, nsfw));
+        return e == null ? null : e.types.value;
+    }
+
+    @Nonnull
+    @Override
+    public Optional<String> findTag(@Nonnull String tag, @Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw) {
+        Entry e = entries.get(new Filters(hidden, nsfw));
+        return e == null ? Optional.empty() : Optional.ofNullable(e.tagsByName.get(tag.toLowerCase(Locale.ROOT)));
+    }
+
+    @Nonnull
+    @Override
+    public Optional<String> findType(@Nonnull String type, @Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw) {
+        Entry e = entries.get(new Filters(hidden, nsfw));
+        return e == null ? Optional.empty() : e.types.value.findType(type);
+    }
+
+    @Nonnull
+    @Override
+    public Optional<PreviewImage> getPreviewImage(@Nonnull String type, @Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw) {
+        Entry e = entries.get(new Filters(hidden, nsfw));
+        return e == null ? Optional.empty() : e.types.value.getPreviewImageByType(type);
+    }
+
+    @Override
+    public synchronized void setRefreshInterval(long interval, @Nonnull TimeUnit unit) {
+        if(interval < 1) {
+            throw new IllegalArgumentException("Interval < 1");
+        }
+        refreshIntervalNanos = unit.toNanos(interval);
+        if(refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * Validates the filters of a random image request against the loaded data, if any.
+     *
+     * @return The type as returned by the API, or the given type if nothing is loaded for the filters.
+     *
+     * @throws IllegalArgumentException If the type or any of the tags don't exist.
+     */
+    @Nullable
+    String validate(@Nullable String type, @Nullable List<String> tags, @Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw) {
+        Entry e = entries.get(new Filters(hidden, nsfw));
+        if(e == null) return type;
+        if(tags != null) {
+            for(String tag : tags) {
+                if(!e.tagsByName.containsKey(tag.toLowerCase(Locale.ROOT))) {
+                    throw new IllegalArgumentException("Unknown tag: " + tag);
+                }
+            }
+        }
+        if(type == null) return null;
+        return e.types.value.findType(type).orElseThrow(()->new IllegalArgumentException("Unknown type: " + type));
+    }
+
+    private synchronized void scheduleRefresh() {
+        if(refreshTask != null) return;
+        if(scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r->{
+                Thread t = new Thread(r, "Weeb4J-ImageCatalogRefresh");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        refreshTask = scheduler.scheduleWithFixedDelay(this::refresh, refreshIntervalNanos, refreshIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void refresh() {
+        for(Filters f : entries.keySet()) {
+            load(f.hidden, f.nsfw).whenComplete((v, error)->{
+                if(error != null) {
+                    //keep using the old data
+                    Weeb4JImpl.LOGGER.warn("Error refreshing image catalog for hidden = {}, nsfw = {}", f.hidden, f.nsfw, error);
+                }
+            });
+        }
+    }
+
+    private static class Entry {
+        final Validated<List<String>> tags;
+        final Map<String, String> tagsByName;
+        final Validated<ImageTypes> types;
+
+        Entry(Validated<List<String>> tags, Validated<ImageTypes> types) {
+            this.tags = tags;
+            this.tagsByName = new HashMap<>(tags.value.size() * 2);
+            for(String tag : tags.value) {
+                tagsByName.putIfAbsent(tag.toLowerCase(Locale.ROOT), tag);
+            }
+            this.types = types;
+        }
+    }
+
+    private static class Filters {
+        final HiddenMode hidden;
+        final NsfwFilter nsfw;
+
+        Filters(HiddenMode hidden, NsfwFilter nsfw) {
+            //no hidden filter behaves the same as the default one
+            this.hidden = hidden == null ? HiddenMode.DEFAULT : hidden;
+            this.nsfw = nsfw;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Filters)) return false;
+            Filters other = (Filters)obj;
+            return hidden == other.hidden && nsfw == other.nsfw;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(hidden, nsfw);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.natanbc.weeb4j.internal;
+
+import com.github.natanbc.weeb4j.image.Image;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of image info by id, with entries expiring after a fixed time.
+ *
+ * Ids of images that don't exist are cached as well, usually with a shorter lifetime, so
+ * repeated lookups of deleted images don't make requests either.
+ */
+class ImageMetadataCache {
+    private final LinkedHashMap<String, CachedImage> entries;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    ImageMetadataCache(int maxEntries, long ttlNanos, long negativeTtlNanos) {
+        if(maxEntries < 1) {
+            throw new IllegalArgumentException("Max entries < 1");
+        }
+        if(ttlNanos < 0) {
+            throw new IllegalArgumentException("TTL < 0");
+        }
+        if(negativeTtlNanos < 0) {
+            throw new IllegalArgumentException("Negative TTL < 0");
+        }
+        this.entries = new LinkedHashMap<String, CachedImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedImage> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.ttlNanos = ttlNanos;
+        this.negativeTtlNanos = negativeTtlNanos;
+    }
+
+    /**
+     * Returns the cached entry for an id.
+     *
+     * @param id Image id.
+     *
+     * @return The cached entry, whose image is null if the image doesn't exist, or null if nothing is cached.
+     */
+    @Nullable
+    synchronized CachedImage get(@Nonnull String id) {
+        CachedImage e = entries.get(id);
+        if(e == null) return null;
+        if(System.nanoTime() - e.expiresAt >= 0) {
+            entries.remove(id);
+            return null;
+        }
+        return e;
+    }
+
+    /**
+     * Caches the info of an image.
+     *
+     * @param id Image id.
+     * @param image The image, or null if it doesn't exist.
+     */
+    void put(@Nonnull String id, @Nullable Image image) {
+        long ttl = image == null ? negativeTtlNanos : ttlNanos;
+        if(ttl == 0) return;
+        CachedImage e = new CachedImage(image, System.nanoTime() + ttl);
+        synchronized(this) {
+            entries.put(id, e);
+        }
+    }
+
+    static class CachedImage {
+        final Image image;
+        final long expiresAt;
+
+        CachedImage(Image image, long expiresAt) {
+            this.image = image;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.natanbc.weeb4j.internal;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Runs an asynchronous task for each element of a list, with a limited amount of tasks running at once.
+ *
+ * @param <I> Type of the inputs.
+ * @param <O> Type of the results.
+ */
+class ParallelRequests<I, O> {
+    private final AtomicInteger next = new AtomicInteger();
+    private final List<? extends I> inputs;
+    private final Function<? super I, ? extends CompletionStage<O>> task;
+    private final List<CompletableFuture<O>> results;
+
+    private ParallelRequests(List<? extends I> inputs, Function<? super I, ? extends CompletionStage<O>> task) {
+        this.inputs = inputs;
+        this.task = task;
+        List<CompletableFuture<O>> results = new ArrayList<>(inputs.size());
+        for(int i = 0; i < inputs.size(); i++) {
+            results.add(new CompletableFuture<>());
+        }
+        this.results = Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Starts the tasks. A failed task doesn't stop the others.
+     *
+     * @param inputs Inputs to run the task with.
+     * @param parallelism Maximum amount of tasks running at once.
+     * @param task Task to run.
+     * @param <I> Type of the inputs.
+     * @param <O> Type of the results.
+     *
+     * @return One future for each input, in the same order, completed with the result of the task.
+     */
+    @Nonnull
+    static <I, O> List<CompletableFuture<O>> run(@Nonnull List<? extends I> inputs, int parallelism, @Nonnull Function<? super I, ? extends CompletionStage<O>> task) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism < 1");
+        }
+        ParallelRequests<I, O> requests = new ParallelRequests<>(inputs, task);
+        for(int i = 0, j = Math.min(parallelism, inputs.size()); i < j; i++) {
+            requests.runNext();
+        }
+        return requests.results;
+    }
+
+    /**
+     * Waits for the results of {@link #run(List, int, Function) run}, without failing if any of them fail.
+     *
+     * @param inputs Inputs the tasks were run with.
+     * @param results Results returned by run.
+     * @param onError Called with the input and error of each failed task.
+     * @param <I> Type of the inputs.
+     *
+     * @return A future completed once all results are complete, successfully or not.
+     */
+    @Nonnull
+    static <I> CompletableFuture<Void> allSettled(@Nonnull List<? extends I> inputs, @Nonnull List<? extends CompletableFuture<?>> results, @Nonnull BiConsumer<? super I, Throwable> onError) {
+        CompletableFuture<?>[] futures = new CompletableFuture[results.size()];
+        for(int i = 0; i < futures.length; i++) {
+            I input = inputs.get(i);
+            futures[i] = results.get(i).handle((r, e)->{
+                if(e != null) {
+                    onError.accept(input, e);
+                }
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    private void runNext() {
+        //loop instead of recursing for tasks that complete immediately, like cache hits
+        while(true) {
+            int i = next.getAndIncrement();
+            if(i >= inputs.size()) return;
+            CompletableFuture<O> result = results.get(i);
+            CompletableFuture<O> stage;
+            try {
+                stage = task.apply(inputs.get(i)).toCompletableFuture();
+            } catch(RuntimeException e) {
+                result.completeExceptionally(e);
+                continue;
+            }
+            if(stage.isDone()) {
+                stage.whenComplete((r, e)->complete(result, r, e));
+                continue;
+            }
+            stage.whenComplete((r, e)->{
+                complete(result, r, e);
+                runNext();
+            });
+            return;
+        }
+    }
+
+    private static <O> void complete(CompletableFuture<O> future, O result, Throwable error) {
+        if(error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(result);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.natanbc.weeb4j.internal;
+
+import com.github.natanbc.reliqua.request.PendingRequest;
+import com.github.natanbc.weeb4j.image.Image;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Fetches several distinct random images, making all requests at once and leaving the pacing to the rate limiter.
+ *
+ * Images already received are discarded and requested again, up to {@code count} extra requests in total, so
+ * the result might have less than {@code count} images if there aren't enough matching images.
+ */
+class RandomImageBatch {
+    private final CompletableFuture<List<Image>> future = new CompletableFuture<>();
+    //guarded by this
+    private final Map<String, Image> images = new LinkedHashMap<>();
+    private final Supplier<PendingRequest<Image>> request;
+    private final int count;
+    //guarded by this
+    private int pending;
+    private int retriesLeft;
+    private boolean exhausted;
+
+    RandomImageBatch(int count, @Nonnull Supplier<PendingRequest<Image>> request) {
+        this.count = count;
+        this.request = request;
+        this.retriesLeft = count;
+    }
+
+    @Nonnull
+    CompletableFuture<List<Image>> start() {
+        synchronized(this) {
+            pending = count;
+        }
+        for(int i = 0; i < count; i++) {
+            send();
+        }
+        return future;
+    }
+
+    private void send() {
+        request.get().async(this::onImage, future::completeExceptionally);
+    }
+
+    private void onImage(Image image) {
+        int retries;
+        List<Image> result = null;
+        synchronized(this) {
+            pending--;
+            if(image == null) {
+                //nothing matches the filters
+                exhausted = true;
+            } else {
+                images.putIfAbsent(image.getId(), image);
+            }
+            int missing = count - images.size() - pending;
+            retries = exhausted ? 0 : Math.max(0, Math.min(missing, retriesLeft));
+            retriesLeft -= retries;
+            pending += retries;
+            if(pending == 0) {
+                result = Collections.unmodifiableList(new ArrayList<>(images.values()));
+            }
+        }
+        if(result != null) {
+            future.complete(result);
+            return;
+        }
+        if(future.isDone()) return;
+        for(int i = 0; i < retries; i++) {
+            send();
+        }
+    }
+}
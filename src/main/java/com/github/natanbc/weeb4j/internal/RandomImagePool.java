@@ -0,0 +1,134 @@
+package com.github.natanbc.weeb4j.internal;
+
+import com.github.natanbc.reliqua.request.PendingRequest;
+import com.github.natanbc.weeb4j.image.Image;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Pools of prefetched random images, one for each combination of filters, identified by the request url.
+ *
+ * Pools are created on first use and only refilled after an image is taken from them, so filters that stop
+ * being used don't keep making requests. Each pool has at most one refill request in flight, and failed refills
+ * are retried with exponential backoff, so refills leave most of the rate limit to other requests.
+ */
+class RandomImagePool {
+    private static final long MIN_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r->{
+        Thread t = new Thread(r, "Weeb4J-RandomImagePool");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Function<String, PendingRequest<Image>> request;
+    private final Function<Image, CompletionStage<?>> prepare;
+    private volatile int size;
+    private volatile boolean closed;
+
+    RandomImagePool(int size, @Nonnull Function<String, PendingRequest<Image>> request, @Nonnull Function<Image, CompletionStage<?>> prepare) {
+        this.size = size;
+        this.request = request;
+        this.prepare = prepare;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    void setSize(int size) {
+        //larger pools fill up on the next access, smaller ones shrink as images are taken
+        this.size = size;
+    }
+
+    /**
+     * Takes an image from the pool for the given url, scheduling a refill.
+     *
+     * @param url Url of the random image request.
+     *
+     * @return A prefetched image, or null if the pool is empty.
+     */
+    @Nullable
+    Image poll(@Nonnull String url) {
+        Pool pool = pools.computeIfAbsent(url, Pool::new);
+        Image image = pool.poll();
+        pool.refill();
+        return image;
+    }
+
+    void close() {
+        closed = true;
+        pools.clear();
+        scheduler.shutdownNow();
+    }
+
+    private class Pool {
+        private final Queue<Image> images = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger available = new AtomicInteger();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private final String url;
+        //only accessed by the thread that owns the refilling flag
+        private long backoff;
+
+        Pool(String url) {
+            this.url = url;
+        }
+
+        Image poll() {
+            Image image = images.poll();
+            if(image != null) {
+                available.decrementAndGet();
+            }
+            return image;
+        }
+
+        void refill() {
+            if(closed || available.get() >= size) return;
+            if(!refilling.compareAndSet(false, true)) return;
+            request.apply(url).async(image->{
+                if(image == null) {
+                    //no image matches the filters
+                    retryLater();
+                    return;
+                }
+                backoff = 0;
+                //only hand out the image once it's ready, eg saved to the image cache
+                prepare.apply(image).whenComplete((result, error)->{
+                    images.add(image);
+                    available.incrementAndGet();
+                    refilling.set(false);
+                    refill();
+                });
+            }, error->{
+                Weeb4JImpl.LOGGER.debug("Error refilling random image pool for {}", url, error);
+                retryLater();
+            });
+        }
+
+        private void retryLater() {
+            backoff = backoff == 0 ? MIN_BACKOFF_MILLIS : Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            try {
+                scheduler.schedule(()->{
+                    refilling.set(false);
+                    refill();
+                }, backoff, TimeUnit.MILLISECONDS);
+            } catch(RejectedExecutionException ignored) {
+                //pool was closed
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.github.natanbc.weeb4j.internal;
+
+import com.github.natanbc.reliqua.request.PendingRequest;
+import com.github.natanbc.reliqua.request.RequestException;
+import com.github.natanbc.weeb4j.settings.Setting;
+import com.github.natanbc.weeb4j.settings.SettingCache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Delays setting saves, merging saves of the same setting so only the latest data is sent.
+ *
+ * A pending save is sent once no other save of the same setting happened for the debounce time,
+ * or once the max delay passed since the first merged save, whichever happens first. Saves of the same setting
+ * and deletes of it are sent one at a time, in order.
+ */
+class SettingWriteBehind {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r->{
+        Thread t = new Thread(r, "Weeb4J-SettingWriteBehind");
+        t.setDaemon(true);
+        return t;
+    });
+    //guarded by this
+    private final Map<SettingCache.CacheEntry, PendingWrite> pending = new HashMap<>();
+    //guarded by this
+    private final Map<SettingCache.CacheEntry, InFlight> inFlight = new HashMap<>();
+    private final BiFunction<SettingCache.CacheEntry, String, PendingRequest<Setting>> writer;
+    private final long debounceNanos;
+    private final long maxDelayNanos;
+
+    SettingWriteBehind(long debounceNanos, long maxDelayNanos, @Nonnull BiFunction<SettingCache.CacheEntry, String, PendingRequest<Setting>> writer) {
+        if(debounceNanos < 1) {
+            throw new IllegalArgumentException("Debounce < 1");
+        }
+        if(maxDelayNanos < debounceNanos) {
+            throw new IllegalArgumentException("Max delay < debounce");
+        }
+        this.debounceNanos = debounceNanos;
+        this.maxDelayNanos = maxDelayNanos;
+        this.writer = writer;
+    }
+
+    /**
+     * Queues a save, replacing any pending save of the same setting.
+     *
+     * @param key Setting to save.
+     * @param data Serialized setting data.
+     *
+     * @return A stage completed with the result of the request that sends this data, or newer data.
+     */
+    @Nonnull
+    synchronized CompletionStage<Setting> write(@Nonnull SettingCache.CacheEntry key, @Nonnull String data) {
+        long now = System.nanoTime();
+        PendingWrite old = pending.get(key);
+        PendingWrite w = old == null ? new PendingWrite(now) : old;
+        long delay = Math.min(debounceNanos, w.firstWrite + maxDelayNanos - now);
+        ScheduledFuture<?> task;
+        try {
+            task = scheduler.schedule(()->flush(key, w), Math.max(0, delay), TimeUnit.NANOSECONDS);
+        } catch(RejectedExecutionException e) {
+            //closed after the request was created, send it right away
+            if(old != null) {
+                pending.remove(key);
+                old.task.cancel(false);
+            }
+            w.data = data;
+            send(key, w);
+            return w.future.thenApply(Function.identity());
+        }
+        //only publish the write once it's scheduled, so it can't be left without a task
+        if(old == null) {
+            pending.put(key, w);
+        } else {
+            old.task.cancel(false);
+        }
+        w.task = task;
+        w.data = data;
+        //don't let callers complete the shared future
+        return w.future.thenApply(Function.identity());
+    }
+
+    /**
+     * Returns the newest data of a setting that wasn't saved yet, either still waiting or being sent.
+     *
+     * @param key Setting to check.
+     *
+     * @return The serialized data, or null if there's nothing waiting to be saved.
+     */
+    @Nullable
+    synchronized String unsavedData(@Nonnull SettingCache.CacheEntry key) {
+        PendingWrite w = pending.get(key);
+        if(w != null) return w.data;
+        InFlight f = inFlight.get(key);
+        return f == null ? null : f.data;
+    }
+
+    /**
+     * Drops a pending save, failing the stages returned for it, and runs a delete of the setting once
+     * saves of it that were already sent finish, so the setting can't be saved again after being deleted.
+     *
+     * @param key Setting whose pending save should be dropped.
+     * @param delete Sends the delete request.
+     *
+     * @return A stage completed with the result of the delete.
+     */
+    @Nonnull
+    CompletionStage<Setting> discard(@Nonnull SettingCache.CacheEntry key, @Nonnull Supplier<? extends CompletionStage<Setting>> delete) {
+        PendingWrite w;
+        synchronized(this) {
+            w = pending.remove(key);
+            if(w != null) {
+                w.task.cancel(false);
+            }
+        }
+        if(w != null) {
+            w.future.completeExceptionally(new RequestException("Setting deleted before being saved"));
+        }
+        return enqueue(key, null, delete);
+    }
+
+    /**
+     * Sends all pending saves right away.
+     *
+     * @return A stage completed once all saves finish.
+     */
+    @Nonnull
+    CompletionStage<Void> flushAll() {
+        List<CompletableFuture<Setting>> futures = new ArrayList<>();
+        List<Map.Entry<SettingCache.CacheEntry, PendingWrite>> writes;
+        synchronized(this) {
+            writes = new ArrayList<>(pending.entrySet());
+            pending.clear();
+        }
+        for(Map.Entry<SettingCache.CacheEntry, PendingWrite> e : writes) {
+            e.getValue().task.cancel(false);
+            send(e.getKey(), e.getValue());
+            futures.add(e.getValue().future);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Sends all pending saves and stops the scheduler thread.
+     *
+     * @return A stage completed once all saves finish.
+     */
+    @Nonnull
+    CompletionStage<Void> close() {
+        CompletionStage<Void> flushed = flushAll();
+        scheduler.shutdown();
+        return flushed;
+    }
+
+    private void flush(SettingCache.CacheEntry key, PendingWrite w) {
+        synchronized(this) {
+            //already flushed or replaced
+            if(!pending.remove(key, w)) return;
+        }
+        send(key, w);
+    }
+
+    private void send(SettingCache.CacheEntry key, PendingWrite w) {
+        enqueue(key, w.data, ()->writer.apply(key, w.data).submit()).whenComplete((setting, error)->{
+            if(error != null) {
+                w.future.completeExceptionally(error);
+            } else {
+                w.future.complete(setting);
+            }
+        });
+    }
+
+    //runs requests for the same setting one at a time, in order, so older data can't overwrite newer data
+    //or bring back a deleted setting
+    private CompletionStage<Setting> enqueue(SettingCache.CacheEntry key, String data, Supplier<? extends CompletionStage<Setting>> request) {
+        InFlight current;
+        InFlight previous;
+        synchronized(this) {
+            current = new InFlight(data);
+            previous = inFlight.put(key, current);
+        }
+        CompletableFuture<Setting> result = new CompletableFuture<>();
+        if(previous == null) {
+            run(key, current, request, result);
+        } else {
+            previous.done.whenComplete((v, e)->run(key, current, request, result));
+        }
+        return result;
+    }
+
+    private void run(SettingCache.CacheEntry key, InFlight current, Supplier<? extends CompletionStage<Setting>> request, CompletableFuture<Setting> result) {
+        CompletionStage<Setting> stage;
+        try {
+            stage = request.get();
+        } catch(RuntimeException e) {
+            CompletableFuture<Setting> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            stage = failed;
+        }
+        stage.whenComplete((setting, error)->{
+            synchronized(this) {
+                inFlight.remove(key, current);
+            }
+            current.done.complete(null);
+            if(error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(setting);
+            }
+        });
+    }
+
+    private static class PendingWrite {
+        final CompletableFuture<Setting> future = new CompletableFuture<>();
+        final long firstWrite;
+        //guarded by the SettingWriteBehind lock
+        String data;
+        ScheduledFuture<?> task;
+
+        PendingWrite(long firstWrite) {
+            this.firstWrite = firstWrite;
+        }
+    }
+
+    private static class InFlight {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        //null for deletes
+        final String data;
+
+        InFlight(String data) {
+            this.data = data;
+        }
+    }
+}
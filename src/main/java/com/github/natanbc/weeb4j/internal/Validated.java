@@ -0,0 +1,28 @@
+package com.github.natanbc.weeb4j.internal;
+
+import javax.annotation.Nullable;
+
+/**
+ * Response data along with the validators needed to make a conditional request for it.
+ *
+ * @param <T> Type of the data.
+ */
+class Validated<T> {
+    final T value;
+    final String etag;
+    final String lastModified;
+
+    Validated(T value, @Nullable String etag, @Nullable String lastModified) {
+        this.value = value;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Returns a copy of this object, with the validators of a not modified response.
+     * Validators missing from the response are kept.
+     */
+    Validated<T> revalidated(@Nullable String etag, @Nullable String lastModified) {
+        return new Validated<>(value, etag == null ? this.etag : etag, lastModified == null ? this.lastModified : lastModified);
+    }
+}
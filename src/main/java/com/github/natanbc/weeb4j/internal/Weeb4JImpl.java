@@ -3,19 +3,21 @@ package com.github.natanbc.weeb4j.internal;
 import com.github.natanbc.reliqua.Reliqua;
 import com.github.natanbc.reliqua.limiter.factory.RateLimiterFactory;
 import com.github.natanbc.reliqua.request.PendingRequest;
-import com.github.natanbc.reliqua.request.RequestException;
 import com.github.natanbc.reliqua.util.StatusCodeValidator;
 import com.github.natanbc.weeb4j.Environment;
 import com.github.natanbc.weeb4j.TokenInfo;
 import com.github.natanbc.weeb4j.TokenType;
 import com.github.natanbc.weeb4j.Weeb4J;
+import com.github.natanbc.weeb4j.image.DownloadResult;
 import com.github.natanbc.weeb4j.image.FileType;
 import com.github.natanbc.weeb4j.image.HiddenMode;
 import com.github.natanbc.weeb4j.image.Image;
 import com.github.natanbc.weeb4j.image.ImageCache;
+import com.github.natanbc.weeb4j.image.ImageCatalog;
 import com.github.natanbc.weeb4j.image.ImageProvider;
 import com.github.natanbc.weeb4j.image.ImageTypes;
 import com.github.natanbc.weeb4j.image.NsfwFilter;
+import com.github.natanbc.weeb4j.image.PreviewImage;
 import com.github.natanbc.weeb4j.image.PreviewMode;
 import com.github.natanbc.weeb4j.imagegen.DiscordStatus;
 import com.github.natanbc.weeb4j.imagegen.ImageGenerator;
@@ -28,14 +30,16 @@ import com.github.natanbc.weeb4j.reputation.User;
 import com.github.natanbc.weeb4j.settings.Setting;
 import com.github.natanbc.weeb4j.settings.SettingCache;
 import com.github.natanbc.weeb4j.settings.SettingManager;
+import com.github.natanbc.weeb4j.util.IOUtils;
 import com.github.natanbc.weeb4j.util.InputStreamFunction;
 import com.github.natanbc.weeb4j.util.QueryStringBuilder;
 import com.github.natanbc.weeb4j.util.RequestUtils;
 import com.github.natanbc.weeb4j.util.Utils;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
-import okhttp3.Response;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -47,14 +51,26 @@ import javax.annotation.Nullable;
 import java.awt.Color;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 @SuppressWarnings({"unused", "WeakerAccess"})
 public class Weeb4JImpl extends Reliqua implements Weeb4J {
@@ -69,9 +85,11 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
     private final ImageGeneratorImpl imageGenerator;
     private final ReputationManagerImpl reputationManager;
     private final SettingManager settingManager;
+    private final Downloader downloader;
 
-    public Weeb4JImpl(OkHttpClient client, RateLimiterFactory factory, boolean trackCallSites, Environment environment, TokenType type, String token, String userAgent, Long botId, SettingCache settingCache, ImageCache imageCache) {
+    public Weeb4JImpl(OkHttpClient client, OkHttpClient downloadClient, RateLimiterFactory factory, boolean trackCallSites, Environment environment, TokenType type, String token, String userAgent, Long botId, SettingCache settingCache, ImageCache imageCache, Executor imageCacheExecutor, Executor imageMapperExecutor) {
         super(client, factory, trackCallSites);
+        this.downloader = new Downloader(downloadClient, factory, trackCallSites, userAgent);
         this.environment = environment;
         this.apiBase = environment.getApiBase();
         this.type = type;
@@ -82,12 +100,15 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
         this.reputationManager = new ReputationManagerImpl(this, botId);
         this.settingManager = new SettingManagerImpl(this, settingCache);
         this.imageProvider.setImageCache(imageCache);
+        this.imageProvider.setImageCacheExecutor(imageCacheExecutor);
+        this.imageProvider.setImageMapperExecutor(imageMapperExecutor);
     }
 
     @Override
     public void setTrackCallSites(boolean trackCallSites) {
         super.setTrackCallSites(trackCallSites);
         imageProvider.setTrackCallSites(trackCallSites);
+        downloader.setTrackCallSites(trackCallSites);
     }
 
     @CheckReturnValue
@@ -161,9 +182,7 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
     public <T> PendingRequest<T> download(String url, InputStreamFunction<T> function) {
         Objects.requireNonNull(url, "URL may not be null");
         Objects.requireNonNull(function, "Function may not be null");
-        return createRequest(newRequestBuilder(url))
-                .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
-                .build(response->function.accept(RequestUtils.getInputStream(response)), RequestUtils::handleError);
+        return downloader.download(url, function);
     }
 
     @CheckReturnValue
@@ -177,6 +196,49 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
                 .get();
     }
 
+    /**
+     * Creates the default client used for downloads, sharing the configuration of the given
+     * client but with separate request limits and connections.
+     *
+     * @param client Client used for API requests.
+     *
+     * @return A client for downloads.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public static OkHttpClient createDownloadClient(@Nonnull OkHttpClient client) {
+        Dispatcher dispatcher = new Dispatcher();
+        //downloads are mostly from the same cdn host
+        dispatcher.setMaxRequestsPerHost(16);
+        return client.newBuilder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool())
+                .build();
+    }
+
+    public static class Downloader extends Reliqua {
+        private final String userAgent;
+
+        public Downloader(OkHttpClient client, RateLimiterFactory factory, boolean trackCallSites, String userAgent) {
+            super(client, factory, trackCallSites);
+            this.userAgent = userAgent;
+        }
+
+        @CheckReturnValue
+        @Nonnull
+        public <T> PendingRequest<T> download(@Nonnull String url, @Nonnull InputStreamFunction<T> function) {
+            //no authorization header, the token isn't needed and shouldn't be sent to other hosts
+            Request.Builder builder = new Request.Builder()
+                    .header("User-Agent", userAgent)
+                    .header("Accept-Encoding", "gzip, deflate") //we can handle gzip data
+                    .url(url)
+                    .get();
+            return createRequest(builder)
+                    .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
+                    .build(response->function.accept(RequestUtils.getInputStream(response)), RequestUtils::handleError);
+        }
+    }
+
     public static abstract class AbstractManager extends Reliqua {
         public final Weeb4JImpl api;
 
@@ -193,10 +255,34 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
     }
 
     public static class ImageProviderImpl extends AbstractManager implements ImageProvider {
+        private final Map<String, CompletableFuture<Void>> pendingDownloads = new ConcurrentHashMap<>();
+        private final ImageCatalogImpl catalog = new ImageCatalogImpl(this);
+        private final Executor defaultCacheExecutor;
         private volatile ImageCache cache = ImageCache.noop();
+        private final Executor defaultMapperExecutor;
+        private volatile Executor cacheExecutor;
+        private volatile Executor mapperExecutor;
+        private volatile RandomImagePool randomImagePool;
+        private volatile ImageCacheWarmer randomImageCacheWarmer;
+        private volatile ImageMetadataCache metadataCache = new ImageMetadataCache(1000, TimeUnit.MINUTES.toNanos(10), TimeUnit.MINUTES.toNanos(1));
 
         public ImageProviderImpl(Weeb4JImpl api) {
             super(api);
+            AtomicInteger threadCount = new AtomicInteger();
+            this.defaultCacheExecutor = Executors.newFixedThreadPool(4, r->{
+                Thread t = new Thread(r, "Weeb4J-ImageCacheIO-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            this.cacheExecutor = defaultCacheExecutor;
+            AtomicInteger mapperThreadCount = new AtomicInteger();
+            //mappers may block for long, so threads are created as needed instead of queueing them
+            this.defaultMapperExecutor = Executors.newCachedThreadPool(r->{
+                Thread t = new Thread(r, "Weeb4J-ImageMapper-" + mapperThreadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            this.mapperExecutor = defaultMapperExecutor;
         }
 
         @Nonnull
@@ -210,10 +296,95 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
             this.cache = cache == null ? ImageCache.noop() : cache;
         }
 
+        @Nonnull
+        @Override
+        public Executor getImageCacheExecutor() {
+            return cacheExecutor;
+        }
+
+        @Override
+        public void setImageCacheExecutor(@Nullable Executor executor) {
+            this.cacheExecutor = executor == null ? defaultCacheExecutor : executor;
+        }
+
+        @Nonnull
+        @Override
+        public Executor getImageMapperExecutor() {
+            return mapperExecutor;
+        }
+
+        @Override
+        public void setImageMapperExecutor(@Nullable Executor executor) {
+            this.mapperExecutor = executor == null ? defaultMapperExecutor : executor;
+        }
+
+        @Override
+        public void setImageMetadataCache(int maxEntries, long ttl, long negativeTtl, @Nonnull TimeUnit unit) {
+            if(maxEntries < 0) {
+                throw new IllegalArgumentException("Max entries < 0");
+            }
+            metadataCache = maxEntries == 0 ? null : new ImageMetadataCache(maxEntries, unit.toNanos(ttl), unit.toNanos(negativeTtl));
+        }
+
+        @Nonnull
+        @Override
+        public ImageCatalog getImageCatalog() {
+            return catalog;
+        }
+
         @CheckReturnValue
         @Nonnull
         @Override
         public PendingRequest<List<String>> getImageTags(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw) {
+            return createRequest(api.newRequestBuilder(imageTagsUrl(hidden, nsfw)))
+                    .setRateLimiter(getRateLimiter("/images/tags"))
+                    .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
+                    .build(response->parseTags(RequestUtils.toJSONObject(response)), RequestUtils::handleError);
+        }
+
+        @CheckReturnValue
+        @Nonnull
+        @Override
+        public PendingRequest<ImageTypes> getImageTypes(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw, @Nullable PreviewMode preview) {
+            return createRequest(api.newRequestBuilder(imageTypesUrl(hidden, nsfw, preview)))
+                    .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
+                    .setRateLimiter(getRateLimiter("/images/types"))
+                    .build(response->ImageTypes.fromJSON(api, RequestUtils.toJSONObject(response)), RequestUtils::handleError);
+        }
+
+        //conditional versions for the catalog, a 304 response returns the previous data with updated validators
+        PendingRequest<Validated<List<String>>> getImageTags(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw, @Nullable Validated<List<String>> previous) {
+            return getValidated(imageTagsUrl(hidden, nsfw), "/images/tags", previous, ImageProviderImpl::parseTags);
+        }
+
+        PendingRequest<Validated<ImageTypes>> getImageTypes(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw, @Nullable PreviewMode preview, @Nullable Validated<ImageTypes> previous) {
+            return getValidated(imageTypesUrl(hidden, nsfw, preview), "/images/types", previous, json->ImageTypes.fromJSON(api, json));
+        }
+
+        private <T> PendingRequest<Validated<T>> getValidated(String url, String rateLimiter, Validated<T> previous, Function<JSONObject, T> parser) {
+            Request.Builder builder = api.newRequestBuilder(url);
+            if(previous != null) {
+                if(previous.etag != null) {
+                    builder.header("If-None-Match", previous.etag);
+                }
+                if(previous.lastModified != null) {
+                    builder.header("If-Modified-Since", previous.lastModified);
+                }
+            }
+            return createRequest(builder)
+                    .setRateLimiter(getRateLimiter(rateLimiter))
+                    .setStatusCodeValidator(StatusCodeValidator.acceptAny(200, 304))
+                    .build(response->{
+                        String etag = response.header("ETag");
+                        String lastModified = response.header("Last-Modified");
+                        if(response.code() == 304 && previous != null) {
+                            return previous.revalidated(etag, lastModified);
+                        }
+                        return new Validated<>(parser.apply(RequestUtils.toJSONObject(response)), etag, lastModified);
+                    }, RequestUtils::handleError);
+        }
+
+        private String imageTagsUrl(HiddenMode hidden, NsfwFilter nsfw) {
             QueryStringBuilder qsb = new QueryStringBuilder()
                     .append(api.getApiBase() + "/images/tags");
             if(hidden != null) {
@@ -222,24 +393,10 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
             if(nsfw != null) {
                 nsfw.appendTo(qsb);
             }
-            return createRequest(api.newRequestBuilder(qsb.build()))
-                    .setRateLimiter(getRateLimiter("/images/tags"))
-                    .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
-                    .build(response->{
-                        JSONObject json = RequestUtils.toJSONObject(response);
-                        JSONArray types = json.getJSONArray("tags");
-                        List<String> list = new ArrayList<>(types.length());
-                        for(int i = 0, j = types.length(); i < j; i++) {
-                            list.add(types.getString(i));
-                        }
-                        return Collections.unmodifiableList(list);
-                    }, RequestUtils::handleError);
+            return qsb.build();
         }
 
-        @CheckReturnValue
-        @Nonnull
-        @Override
-        public PendingRequest<ImageTypes> getImageTypes(@Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw, @Nullable PreviewMode preview) {
+        private String imageTypesUrl(HiddenMode hidden, NsfwFilter nsfw, PreviewMode preview) {
             QueryStringBuilder qsb = new QueryStringBuilder()
                     .append(api.getApiBase() + "/images/types");
             if(hidden != null) {
@@ -251,19 +408,42 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
             if(preview != null) {
                 preview.appendTo(qsb);
             }
-            return createRequest(api.newRequestBuilder(qsb.build()))
-                    .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
-                    .setRateLimiter(getRateLimiter("/images/types"))
-                    .build(response->ImageTypes.fromJSON(api, RequestUtils.toJSONObject(response)), RequestUtils::handleError);
+            return qsb.build();
+        }
+
+        private static List<String> parseTags(JSONObject json) {
+            JSONArray types = json.getJSONArray("tags");
+            List<String> list = new ArrayList<>(types.length());
+            for(int i = 0, j = types.length(); i < j; i++) {
+                list.add(types.getString(i));
+            }
+            return Collections.unmodifiableList(list);
         }
 
         @CheckReturnValue
         @Nonnull
         @Override
         public PendingRequest<Image> getRandomImage(@Nullable String type, @Nullable List<String> tags, @Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw, @Nullable FileType fileType) {
+            return randomImage(randomImageUrl(type, tags, hidden, nsfw, fileType));
+        }
+
+        @CheckReturnValue
+        @Nonnull
+        @Override
+        public CompletionStage<List<Image>> getRandomImages(int count, @Nullable String type, @Nullable List<String> tags, @Nullable HiddenMode hidden, @Nullable NsfwFilter nsfw, @Nullable FileType fileType) {
+            if(count < 1) {
+                throw new IllegalArgumentException("Count < 1");
+            }
+            String url = randomImageUrl(type, tags, hidden, nsfw, fileType);
+            return new RandomImageBatch(count, ()->randomImage(url)).start();
+        }
+
+        //validates the arguments and builds the request url
+        private String randomImageUrl(String type, List<String> tags, HiddenMode hidden, NsfwFilter nsfw, FileType fileType) {
             if(type == null && (tags == null || tags.isEmpty())) {
                 throw new IllegalArgumentException("Either type or tags must be present");
             }
+            type = catalog.validate(type, tags, hidden, nsfw);
 
             QueryStringBuilder qsb = new QueryStringBuilder()
                     .append(api.getApiBase() + "/images/random");
@@ -285,65 +465,315 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
                 }
                 fileType.appendTo(qsb);
             }
-            return createRequest(api.newRequestBuilder(qsb.build()))
+            return qsb.build();
+        }
+
+        private PendingRequest<Image> randomImage(String url) {
+            RandomImagePool pool = randomImagePool;
+            if(pool == null) {
+                return randomImageRequest(url);
+            }
+            return new FutureRequest<>(this, api.newRequestBuilder(url), ()->{
+                Image image = pool.poll(url);
+                if(image != null) {
+                    return CompletableFuture.completedFuture(image);
+                }
+                return randomImageRequest(url).submit();
+            });
+        }
+
+        private PendingRequest<Image> randomImageRequest(String url) {
+            return createRequest(api.newRequestBuilder(url))
                     .setRateLimiter(getRateLimiter("/images/random"))
                     .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
-                    .build(response->Image.fromJSON(this, RequestUtils.toJSONObject(response)), RequestUtils::handleError);
+                    .build(response->{
+                        Image image = Image.fromJSON(this, RequestUtils.toJSONObject(response));
+                        ImageMetadataCache metadata = metadataCache;
+                        if(metadata != null) {
+                            metadata.put(image.getId(), image);
+                        }
+                        return image;
+                    }, RequestUtils::handleError);
+        }
+
+        @Override
+        public int getRandomImagePoolSize() {
+            RandomImagePool pool = randomImagePool;
+            return pool == null ? 0 : pool.getSize();
+        }
+
+        @Override
+        public synchronized void setRandomImagePoolSize(int size) {
+            if(size < 0) {
+                throw new IllegalArgumentException("Size < 0");
+            }
+            RandomImagePool pool = randomImagePool;
+            if(size == 0) {
+                randomImagePool = null;
+                if(pool != null) {
+                    pool.close();
+                }
+            } else if(pool == null) {
+                randomImagePool = new RandomImagePool(size, this::randomImageRequest, this::warmRandomImage);
+            } else {
+                pool.setSize(size);
+            }
+        }
+
+        @Override
+        public void setRandomImagePoolCacheWarming(int maxConcurrentDownloads, long maxBytesPerSecond) {
+            if(maxConcurrentDownloads < 0) {
+                throw new IllegalArgumentException("Max concurrent downloads < 0");
+            }
+            randomImageCacheWarmer = maxConcurrentDownloads == 0 ? null : new ImageCacheWarmer(this, maxConcurrentDownloads, maxBytesPerSecond);
+        }
+
+        private CompletionStage<?> warmRandomImage(Image image) {
+            ImageCacheWarmer warmer = randomImageCacheWarmer;
+            if(warmer == null || cache == ImageCache.noop()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return warmer.warm(image);
         }
 
         @CheckReturnValue
         @Nonnull
         @Override
         public PendingRequest<Image> getImageById(@Nonnull String id) {
-            return createRequest(api.newRequestBuilder(api.getApiBase() + "/images/info/" + id))
+            Request.Builder r = api.newRequestBuilder(api.getApiBase() + "/images/info/" + id);
+            PendingRequest<Image> request = createRequest(r)
                     .setRateLimiter(getRateLimiter("/images/info"))
                     .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
                     .build(response->Image.fromJSON(this, RequestUtils.toJSONObject(response)), RequestUtils::handleError);
+            ImageMetadataCache metadata = metadataCache;
+            if(metadata == null) {
+                return request;
+            }
+            return new FutureRequest<>(this, r, ()->{
+                ImageMetadataCache.CachedImage cached = metadata.get(id);
+                if(cached != null) {
+                    return CompletableFuture.completedFuture(cached.image);
+                }
+                //missing images are returned as null, and cached as well
+                return request.submit().thenApply(image->{
+                    metadata.put(id, image);
+                    return image;
+                });
+            });
+        }
+
+        @CheckReturnValue
+        @Nonnull
+        @Override
+        public CompletionStage<Map<String, Image>> getImagesById(@Nonnull Collection<String> ids, int parallelism) {
+            Objects.requireNonNull(ids, "IDs may not be null");
+            Map<String, Image> found = new LinkedHashMap<>();
+            List<String> missing = new ArrayList<>();
+            ImageMetadataCache metadata = metadataCache;
+            for(String id : new LinkedHashSet<>(ids)) {
+                ImageMetadataCache.CachedImage cached = metadata == null ? null : metadata.get(id);
+                if(cached == null) {
+                    missing.add(id);
+                } else if(cached.image != null) {
+                    found.put(id, cached.image);
+                }
+            }
+            if(missing.isEmpty()) {
+                return CompletableFuture.completedFuture(Collections.unmodifiableMap(found));
+            }
+            List<CompletableFuture<Image>> results = ParallelRequests.run(missing, parallelism, id->getImageById(id).submit());
+            return ParallelRequests.allSettled(missing, results, (id, error)->LOGGER.debug("Error fetching image {}", id, error)).thenApply(v->{
+                for(int i = 0; i < missing.size(); i++) {
+                    CompletableFuture<Image> result = results.get(i);
+                    //failed images are left out instead of failing the whole batch
+                    if(result.isCompletedExceptionally()) continue;
+                    Image image = result.join();
+                    if(image != null) {
+                        found.put(missing.get(i), image);
+                    }
+                }
+                return Collections.unmodifiableMap(found);
+            });
         }
 
         @Nonnull
         @Override
         public <T> PendingRequest<T> download(Image image, InputStreamFunction<T> mapper) {
-            return new PendingRequest<T>(api, null, new Request.Builder().url(image.getUrl()).build(), null) {
-                @Nullable
-                @Override
-                protected T onSuccess(@Nonnull Response response) {
-                    return null;
+            ImageCache cache = this.cache;
+            if(cache == ImageCache.noop()) {
+                return api.download(image.getUrl(), mapper);
+            }
+            return new FutureRequest<>(api, new Request.Builder().url(image.getUrl()), ()->download(cache, image.getId(), image.getUrl(), mapper));
+        }
+
+        @Nonnull
+        @Override
+        public PendingRequest<Long> download(Image image, WritableByteChannel target) {
+            InputStreamFunction<Long> mapper = IOUtils.writeTo(target);
+            ImageCache cache = this.cache;
+            if(cache == ImageCache.noop()) {
+                return api.download(image.getUrl(), mapper);
+            }
+            return new FutureRequest<>(api, new Request.Builder().url(image.getUrl()), ()->{
+                Executor executor = cacheExecutor;
+                return CompletableFuture.supplyAsync(()->{
+                    try {
+                        return cache.transferTo(image.getId(), target);
+                    } catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor).thenCompose(transferred->{
+                    if(transferred != -1) {
+                        return CompletableFuture.completedFuture(transferred);
+                    }
+                    return download(cache, image.getId(), image.getUrl(), mapper);
+                });
+            });
+        }
+
+        @Nonnull
+        @Override
+        public <T> PendingRequest<T> download(PreviewImage preview, InputStreamFunction<T> mapper) {
+            ImageCache cache = this.cache;
+            if(cache == ImageCache.noop()) {
+                return api.download(preview.getUrl(), mapper);
+            }
+            return new FutureRequest<>(api, new Request.Builder().url(preview.getUrl()), ()->download(cache, preview.getId(), preview.getUrl(), mapper));
+        }
+
+        @Nonnull
+        @Override
+        public CompletionStage<Void> prefetchPreviews(@Nonnull ImageTypes types) {
+            Objects.requireNonNull(types, "Types may not be null");
+            if(cache == ImageCache.noop()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            //closing the stream without reading it still saves the image to the cache
+            List<CompletableFuture<Object>> downloads = ParallelRequests.run(types.getPreviewImages(), 4, preview->download(preview, is->null).submit());
+            return CompletableFuture.allOf(downloads.stream().map(f->f.handle((v, error)->{
+                if(error != null) {
+                    LOGGER.debug("Error prefetching preview image", error);
                 }
+                return null;
+            })).toArray(CompletableFuture[]::new));
+        }
 
-                @Override
-                public void async(@Nullable Consumer<T> onSuccess, @Nullable Consumer<RequestException> onError) {
-                    if(onSuccess == null) return;
-                    api.getClient().dispatcher().executorService().submit(()->{
+        @Nonnull
+        @Override
+        public <T> CompletionStage<List<DownloadResult<T>>> downloadAll(@Nonnull List<Image> images, @Nonnull InputStreamFunction<T> mapper, int parallelism, @Nullable Consumer<DownloadResult<T>> onResult) {
+            Objects.requireNonNull(images, "Images may not be null");
+            Objects.requireNonNull(mapper, "Mapper may not be null");
+            List<CompletableFuture<T>> downloads = ParallelRequests.run(images, parallelism, image->download(image, mapper).submit());
+            List<CompletableFuture<DownloadResult<T>>> results = new ArrayList<>(images.size());
+            for(int i = 0; i < images.size(); i++) {
+                Image image = images.get(i);
+                results.add(downloads.get(i).handle((value, error)->{
+                    DownloadResult<T> result = error == null ?
+                            DownloadResult.success(image, value) :
+                            DownloadResult.failure(image, FutureRequest.toRequestException(error));
+                    if(onResult != null) {
                         try {
-                            String id = image.getId();
-                            InputStream in = cache.retrieve(id);
-                            if(in != null) {
-                                try(InputStream i = in) {
-                                    onSuccess.accept(mapper.accept(i));
-                                }
-                                return;
-                            }
-                            api.download(image.getUrl(), is->{
-                                cache.save(id, is);
-                                return cache.retrieve(id);
-                            }).async(is->{
-                                try(InputStream i = is) {
-                                    onSuccess.accept(mapper.accept(i));
-                                } catch(IOException e) {
-                                    if(onError != null) {
-                                        onError.accept(new RequestException(e));
-                                    }
-                                }
-                            }, onError);
-                        } catch(IOException e) {
-                            if(onError != null) {
-                                onError.accept(new RequestException(e));
-                            }
+                            onResult.accept(result);
+                        } catch(Exception e) {
+                            LOGGER.error("Error in download callback", e);
                         }
-                    });
+                    }
+                    return result;
+                }));
+            }
+            return CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenApply(v->{
+                List<DownloadResult<T>> list = new ArrayList<>(results.size());
+                for(CompletableFuture<DownloadResult<T>> f : results) {
+                    list.add(f.join());
+                }
+                return Collections.unmodifiableList(list);
+            });
+        }
+
+        //saves an image to the cache ahead of time, streaming the response through the given consumer
+        //the download isn't published as pending, so user downloads of the same image never wait on a throttled warm up
+        CompletableFuture<Void> warm(Image image, InputStreamFunction<Void> consumer) {
+            ImageCache cache = this.cache;
+            if(cache == ImageCache.noop()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            String id = image.getId();
+            return cache.retrieveAsync(id, cacheExecutor).toCompletableFuture().thenCompose(in->{
+                if(in != null) {
+                    //already cached, skip without reading it
+                    try {
+                        in.close();
+                    } catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return CompletableFuture.completedFuture(null);
+                }
+                if(pendingDownloads.containsKey(id)) {
+                    //already being saved by a user download
+                    return CompletableFuture.completedFuture(null);
+                }
+                //only reads from the network go through the consumer, so cache hits are never throttled
+                return api.download(image.getUrl(), is->{
+                    try(InputStream i = cache.fill(id, is)) {
+                        return consumer.accept(i);
+                    }
+                }).submit();
+            });
+        }
+
+        private <T> CompletableFuture<T> download(ImageCache cache, String id, String url, InputStreamFunction<T> mapper) {
+            Executor executor = cacheExecutor;
+            return cache.retrieveAsync(id, executor).toCompletableFuture().thenCompose(in->{
+                if(in == null) {
+                    return fill(cache, executor, id, url, mapper);
+                }
+                return map(in, mapper);
+            });
+        }
+
+        //mappers may be slow or block reading the cache, so they never run on the cache executor, the http client threads,
+        //or the caller thread for caches that don't block
+        private <T> CompletableFuture<T> map(InputStream in, InputStreamFunction<T> mapper) {
+            return CompletableFuture.supplyAsync(()->{
+                try(InputStream i = in) {
+                    return mapper.accept(i);
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, mapperExecutor);
+        }
+
+        private <T> CompletableFuture<T> fill(ImageCache cache, Executor executor, String id, String url, InputStreamFunction<T> mapper) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            CompletableFuture<Void> pending = pendingDownloads.putIfAbsent(id, future);
+            if(pending != null) {
+                //another caller is already downloading this image, read it from the cache once it's done
+                return pending.thenComposeAsync(v->downloadFilled(cache, id, url, mapper), executor);
+            }
+            //stream the image to the mapper while it's saved to the cache
+            //this runs on the http client threads, as writes happen while the response body is read
+            return api.download(url, is->{
+                try(InputStream i = cache.fill(id, is)) {
+                    return mapper.accept(i);
                 }
-            };
+            }).submit().toCompletableFuture().whenComplete((result, error)->{
+                pendingDownloads.remove(id, future);
+                future.complete(null);
+            });
+        }
+
+        private <T> CompletionStage<T> downloadFilled(ImageCache cache, String id, String url, InputStreamFunction<T> mapper) {
+            InputStream in;
+            try {
+                in = cache.retrieve(id);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if(in == null) {
+                //failed, evicted or not kept by the cache, request it again
+                return api.download(url, mapper).submit();
+            }
+            return map(in, mapper);
         }
     }
 
@@ -639,7 +1069,9 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
     }
 
     public static class SettingManagerImpl extends AbstractManager implements SettingManager {
+        private final Map<SettingCache.CacheEntry, CompletableFuture<Setting>> pendingLoads = new ConcurrentHashMap<>();
         private SettingCache cache;
+        private volatile SettingWriteBehind writeBehind;
 
         public SettingManagerImpl(Weeb4JImpl api, SettingCache cache) {
             super(api);
@@ -656,6 +1088,22 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
             return cache;
         }
 
+        @Override
+        public synchronized void setWriteBehind(long debounce, long maxDelay, @Nonnull TimeUnit unit) {
+            SettingWriteBehind old = writeBehind;
+            writeBehind = debounce == 0 ? null : new SettingWriteBehind(unit.toNanos(debounce), unit.toNanos(maxDelay), this::post);
+            if(old != null) {
+                old.close();
+            }
+        }
+
+        @Nonnull
+        @Override
+        public CompletionStage<Void> flushAll() {
+            SettingWriteBehind writeBehind = this.writeBehind;
+            return writeBehind == null ? CompletableFuture.completedFuture(null) : writeBehind.flushAll();
+        }
+
         @Nonnull
         @Override
         public PendingRequest<Setting> getSetting(@Nonnull String type, @Nonnull String id) {
@@ -668,7 +1116,7 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
                     return completedRequest(r, Setting.create(type, id, cached));
                 }
             }
-            return createRequest(r)
+            PendingRequest<Setting> request = createRequest(r)
                     .setRateLimiter(getRateLimiter("/settings"))
                     .setStatusCodeValidator(StatusCodeValidator.acceptAny(200, 404))
                     .build(response->{
@@ -679,11 +1127,46 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
                             JSONObject json = RequestUtils.toJSONObject(response);
                             s = Setting.fromJSON(json.getJSONObject("setting"));
                         }
+                        s = withUnsavedData(new SettingCache.CacheEntry(null, null, type, id), s);
                         if(cache != null) {
                             cache.saveSetting(type, id, s.getData());
                         }
                         return s;
                     }, RequestUtils::handleError);
+            return new FutureRequest<>(this, r, ()->load(new SettingCache.CacheEntry(null, null, type, id), request));
+        }
+
+        @Nonnull
+        @Override
+        public CompletionStage<Map<String, Setting>> getSettings(@Nonnull String type, @Nonnull Collection<String> ids, int parallelism) {
+            Objects.requireNonNull(type, "Type may not be null");
+            Objects.requireNonNull(ids, "IDs may not be null");
+            Map<String, Setting> found = new LinkedHashMap<>();
+            List<String> missing = new ArrayList<>();
+            SettingCache cache = this.cache;
+            for(String id : new LinkedHashSet<>(ids)) {
+                JSONObject cached = cache == null ? null : cache.getSetting(type, id);
+                if(cached == null) {
+                    missing.add(id);
+                } else {
+                    found.put(id, Setting.create(type, id, cached));
+                }
+            }
+            if(missing.isEmpty()) {
+                return CompletableFuture.completedFuture(Collections.unmodifiableMap(found));
+            }
+            //getSetting saves the results to the cache as they arrive
+            List<CompletableFuture<Setting>> results = ParallelRequests.run(missing, parallelism, id->getSetting(type, id).submit());
+            return ParallelRequests.allSettled(missing, results, (id, error)->LOGGER.debug("Error fetching setting {}", id, error)).thenApply(v->{
+                for(int i = 0; i < missing.size(); i++) {
+                    CompletableFuture<Setting> result = results.get(i);
+                    //failed settings are left out instead of failing the whole batch
+                    if(!result.isCompletedExceptionally()) {
+                        found.put(missing.get(i), result.join());
+                    }
+                }
+                return Collections.unmodifiableMap(found);
+            });
         }
 
         @Nonnull
@@ -697,16 +1180,7 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
                 throw new IllegalArgumentException("Data may not be bigger than 10 KiB");
             }
             if(cache != null) cache.saveSetting(type, id, data);
-            return createRequest(
-                    api.newRequestBuilder(api.getApiBase() + "/settings/" + type + "/" + id)
-                    .post(RequestBody.create(RequestUtils.MEDIA_TYPE_JSON, s))
-            )
-                    .setRateLimiter(getRateLimiter("/settings"))
-                    .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
-                    .build(response->{
-                        JSONObject json = RequestUtils.toJSONObject(response);
-                        return Setting.fromJSON(json.getJSONObject("setting"));
-                    }, RequestUtils::handleError);
+            return save(new SettingCache.CacheEntry(null, null, type, id), s);
         }
 
         @Nonnull
@@ -715,13 +1189,15 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
             Objects.requireNonNull(type, "Type may not be null");
             Objects.requireNonNull(id, "ID may not be null");
             if(cache != null) cache.invalidateSetting(type, id);
-            return createRequest(api.newRequestBuilder(api.getApiBase() + "/settings/" + type + "/" + id).delete())
+            Request.Builder r = api.newRequestBuilder(api.getApiBase() + "/settings/" + type + "/" + id).delete();
+            PendingRequest<Setting> request = createRequest(r)
                     .setRateLimiter(getRateLimiter("/settings"))
                     .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
                     .build(response->{
                         JSONObject json = RequestUtils.toJSONObject(response);
                         return Setting.fromJSON(json.getJSONObject("setting"));
                     }, RequestUtils::handleError);
+            return delete(new SettingCache.CacheEntry(null, null, type, id), r, request);
         }
 
         @Nonnull
@@ -738,7 +1214,7 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
                     return completedRequest(r, Setting.create(parentType, parentId, type, id, cached));
                 }
             }
-            return createRequest(r)
+            PendingRequest<Setting> request = createRequest(r)
                     .setRateLimiter(getRateLimiter("/settings"))
                     .setStatusCodeValidator(StatusCodeValidator.acceptAny(200, 404))
                     .build(response->{
@@ -749,11 +1225,13 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
                             JSONObject json = RequestUtils.toJSONObject(response);
                             s = Setting.fromJSON(json.getJSONObject("subsetting"));
                         }
+                        s = withUnsavedData(new SettingCache.CacheEntry(parentType, parentId, type, id), s);
                         if(cache != null) {
                             cache.saveSubSetting(parentType, parentId, type, id, s.getData());
                         }
                         return s;
                     }, RequestUtils::handleError);
+            return new FutureRequest<>(this, r, ()->load(new SettingCache.CacheEntry(parentType, parentId, type, id), request));
         }
 
         @Nonnull
@@ -769,16 +1247,7 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
                 throw new IllegalArgumentException("Data may not be bigger than 10 KiB");
             }
             if(cache != null) cache.saveSubSetting(parentType, parentId, type, id, data);
-            return createRequest(
-                    api.newRequestBuilder(api.getApiBase() + "/settings/" + parentType + "/" + parentId + "/" + type + "/" + id)
-                            .post(RequestBody.create(RequestUtils.MEDIA_TYPE_JSON, s))
-            )
-                    .setRateLimiter(getRateLimiter("/settings"))
-                    .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
-                    .build(response->{
-                        JSONObject json = RequestUtils.toJSONObject(response);
-                        return Setting.fromJSON(json.getJSONObject("subsetting"));
-                    }, RequestUtils::handleError);
+            return save(new SettingCache.CacheEntry(parentType, parentId, type, id), s);
         }
 
         @Nonnull
@@ -789,13 +1258,15 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
             Objects.requireNonNull(type, "Type may not be null");
             Objects.requireNonNull(id, "ID may not be null");
             if(cache != null) cache.invalidateSubSetting(parentType, parentId, type, id);
-            return createRequest(api.newRequestBuilder(api.getApiBase() + "/settings/" + parentType + "/" + parentId + "/" + type + "/" + id).delete())
+            Request.Builder r = api.newRequestBuilder(api.getApiBase() + "/settings/" + parentType + "/" + parentId + "/" + type + "/" + id).delete();
+            PendingRequest<Setting> request = createRequest(r)
                     .setRateLimiter(getRateLimiter("/settings"))
                     .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
                     .build(response->{
                         JSONObject json = RequestUtils.toJSONObject(response);
                         return Setting.fromJSON(json.getJSONObject("subsetting"));
                     }, RequestUtils::handleError);
+            return delete(new SettingCache.CacheEntry(parentType, parentId, type, id), r, request);
         }
 
         @Nonnull
@@ -818,32 +1289,79 @@ public class Weeb4JImpl extends Reliqua implements Weeb4J {
                     }, RequestUtils::handleError);
         }
 
-        private <T> PendingRequest<T> completedRequest(Request.Builder r, T data) {
-            return new PendingRequest<T>(this, r) {
-                @Nullable
-                @Override
-                protected T onSuccess(@Nonnull Response response) {
-                    return data;
-                }
+        private PendingRequest<Setting> save(SettingCache.CacheEntry key, String data) {
+            SettingWriteBehind writeBehind = this.writeBehind;
+            if(writeBehind == null) {
+                return post(key, data);
+            }
+            return new FutureRequest<>(this, api.newRequestBuilder(settingUrl(key)), ()->writeBehind.write(key, data));
+        }
 
-                @Override
-                public void async(@Nullable Consumer<T> onSuccess, @Nullable Consumer<RequestException> onError) {
-                    if(onSuccess != null) {
-                        onSuccess.accept(data);
-                    }
-                }
+        //deletes wait for delayed saves of the setting that were already sent, so they can't bring it back
+        private PendingRequest<Setting> delete(SettingCache.CacheEntry key, Request.Builder r, PendingRequest<Setting> request) {
+            SettingWriteBehind writeBehind = this.writeBehind;
+            if(writeBehind == null) {
+                return request;
+            }
+            return new FutureRequest<>(this, r, ()->writeBehind.discard(key, request::submit));
+        }
 
-                @Nonnull
-                @Override
-                public CompletionStage<T> submit() {
-                    return CompletableFuture.completedFuture(data);
-                }
+        private PendingRequest<Setting> post(SettingCache.CacheEntry key, String data) {
+            boolean subsetting = key.getParentType() != null;
+            return createRequest(
+                    api.newRequestBuilder(settingUrl(key))
+                            .post(RequestBody.create(RequestUtils.MEDIA_TYPE_JSON, data))
+            )
+                    .setRateLimiter(getRateLimiter("/settings"))
+                    .setStatusCodeValidator(StatusCodeValidator.ACCEPT_200)
+                    .build(response->{
+                        JSONObject json = RequestUtils.toJSONObject(response);
+                        return Setting.fromJSON(json.getJSONObject(subsetting ? "subsetting" : "setting"));
+                    }, RequestUtils::handleError);
+        }
 
-                @Override
-                public T execute() {
-                    return data;
-                }
-            };
+        private String settingUrl(SettingCache.CacheEntry key) {
+            if(key.getParentType() == null) {
+                return api.getApiBase() + "/settings/" + key.getType() + "/" + key.getId();
+            }
+            return api.getApiBase() + "/settings/" + key.getParentType() + "/" + key.getParentId() + "/" + key.getType() + "/" + key.getId();
+        }
+
+        //the server doesn't have delayed saves yet, so loads must not replace them with older data
+        private Setting withUnsavedData(SettingCache.CacheEntry key, Setting setting) {
+            SettingWriteBehind writeBehind = this.writeBehind;
+            String unsaved = writeBehind == null ? null : writeBehind.unsavedData(key);
+            if(unsaved == null) {
+                return setting;
+            }
+            JSONObject data = new JSONObject(unsaved);
+            if(key.getParentType() == null) {
+                return Setting.create(key.getType(), key.getId(), data);
+            }
+            return Setting.create(key.getParentType(), key.getParentId(), key.getType(), key.getId(), data);
+        }
+
+        //concurrent loads of the same setting share a single request
+        private CompletionStage<Setting> load(SettingCache.CacheEntry key, PendingRequest<Setting> request) {
+            CompletableFuture<Setting> future = new CompletableFuture<>();
+            CompletableFuture<Setting> pending = pendingLoads.putIfAbsent(key, future);
+            if(pending == null) {
+                pending = future;
+                request.submit().whenComplete((setting, error)->{
+                    pendingLoads.remove(key, future);
+                    if(error != null) {
+                        future.completeExceptionally(error);
+                    } else {
+                        future.complete(setting);
+                    }
+                });
+            }
+            //don't let callers complete the shared future
+            return pending.thenApply(Function.identity());
+        }
+
+        private <T> PendingRequest<T> completedRequest(Request.Builder r, T data) {
+            return new FutureRequest<>(this, r, ()->CompletableFuture.completedFuture(data));
         }
     }
 }
@@ -12,14 +12,15 @@ public final class Setting {
     private final String parentId;
     private final String type;
     private final String id;
-    private final JSONObject data;
+    private final SettingData dataView;
 
     private Setting(String parentType, String parentId, String type, String id, JSONObject data) {
         this.parentType = parentType;
         this.parentId = parentId;
         this.type = type;
         this.id = id;
-        this.data = data;
+        //private copy, so later changes to the given object can't be seen through the shared view
+        this.dataView = new SettingData(SettingData.copy(data));
     }
 
     /**
@@ -68,17 +69,25 @@ public final class Setting {
     }
 
     /**
-     * Returns this setting's data.
+     * Returns a read only view of this setting's data. Unlike {@link #getData()}, this doesn't copy anything.
+     *
+     * @return This setting's data.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public SettingData getDataView() {
+        return dataView;
+    }
+
+    /**
+     * Returns a mutable copy of this setting's data. Prefer {@link #getDataView()} when only reading.
+     *
+     * Settings keep their own copy of the data they're created with, so changes to that object aren't visible here.
      *
      * @return This setting's data.
      */
     public JSONObject getData() {
-        //copy data
-        JSONObject obj = new JSONObject();
-        for(String key : data.keySet()) {
-            obj.put(key, data.get(key));
-        }
-        return obj;
+        return dataView.toJSONObject();
     }
 
     @CheckReturnValue
@@ -0,0 +1,265 @@
+package com.github.natanbc.weeb4j.settings;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of setting data, for caches that keep settings serialized instead of as
+ * {@link JSONObject JSONObjects}.
+ *
+ * Numbers are stored as variable length integers or raw doubles and strings as length prefixed UTF-8,
+ * so encoded data is usually smaller than its JSON text and much smaller than the parsed object.
+ */
+@SuppressWarnings("unused")
+public final class SettingCodec {
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 4;
+    private static final int STRING = 5;
+    private static final int OBJECT = 6;
+    private static final int ARRAY = 7;
+    private static final int BIG_INTEGER = 8;
+    private static final int BIG_DECIMAL = 9;
+
+    //rough size of the cache entry, key object, strings and array headers
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private SettingCodec() {}
+
+    /**
+     * Encodes setting data.
+     *
+     * @param data Data to encode.
+     *
+     * @return The encoded data.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public static byte[] encode(@Nonnull JSONObject data) {
+        Output out = new Output();
+        writeObject(out, data);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes data encoded by {@link #encode(JSONObject)}.
+     *
+     * @param data Encoded data.
+     *
+     * @return A new object with the decoded data.
+     *
+     * @throws JSONException If the data is malformed.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public static JSONObject decode(@Nonnull byte[] data) {
+        Input in = new Input(data);
+        try {
+            if(in.read() != OBJECT) {
+                throw new JSONException("Encoded data is not an object");
+            }
+            JSONObject obj = readObject(in);
+            if(in.pos != data.length) {
+                throw new JSONException("Trailing data after object");
+            }
+            return obj;
+        } catch(ArrayIndexOutOfBoundsException e) {
+            throw new JSONException("Truncated data", e);
+        }
+    }
+
+    /**
+     * Estimates how much memory a cached setting uses, in bytes. Meant to be used as the weight of cache entries,
+     * so caches can be bounded by memory instead of entry count.
+     *
+     * @param key Key of the setting.
+     * @param data Encoded setting data.
+     *
+     * @return Estimated size of the entry.
+     */
+    @CheckReturnValue
+    public static int weigh(@Nonnull SettingCache.CacheEntry key, @Nonnull byte[] data) {
+        long size = (long)ENTRY_OVERHEAD + data.length
+                + 2L * (length(key.getParentType()) + length(key.getParentId()) + length(key.getType()) + length(key.getId()));
+        return (int)Math.min(Integer.MAX_VALUE, size);
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    private static void writeObject(Output out, JSONObject obj) {
+        out.write(OBJECT);
+        out.writeVarint(obj.length());
+        for(String key : obj.keySet()) {
+            out.writeString(key);
+            writeValue(out, obj.opt(key));
+        }
+    }
+
+    private static void writeArray(Output out, JSONArray array) {
+        out.write(ARRAY);
+        out.writeVarint(array.length());
+        for(int i = 0; i < array.length(); i++) {
+            writeValue(out, array.opt(i));
+        }
+    }
+
+    private static void writeValue(Output out, Object value) {
+        if(value == null || value == JSONObject.NULL) {
+            out.write(NULL);
+        } else if(value instanceof Boolean) {
+            out.write((Boolean)value ? TRUE : FALSE);
+        } else if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.write(INTEGER);
+            long l = ((Number)value).longValue();
+            out.writeVarint((l << 1) ^ (l >> 63));
+        } else if(value instanceof Double || value instanceof Float) {
+            out.write(DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits(((Number)value).doubleValue()));
+        } else if(value instanceof BigInteger) {
+            out.write(BIG_INTEGER);
+            out.writeString(value.toString());
+        } else if(value instanceof BigDecimal) {
+            out.write(BIG_DECIMAL);
+            out.writeString(value.toString());
+        } else if(value instanceof JSONObject) {
+            writeObject(out, (JSONObject)value);
+        } else if(value instanceof JSONArray) {
+            writeArray(out, (JSONArray)value);
+        } else {
+            //maps, collections, beans and anything else org.json knows how to convert
+            Object wrapped = JSONObject.wrap(value);
+            if(wrapped instanceof JSONObject || wrapped instanceof JSONArray) {
+                writeValue(out, wrapped);
+            } else {
+                out.write(STRING);
+                out.writeString(String.valueOf(wrapped == null ? value : wrapped));
+            }
+        }
+    }
+
+    private static JSONObject readObject(Input in) {
+        int length = in.readLength();
+        JSONObject obj = new JSONObject();
+        for(int i = 0; i < length; i++) {
+            String key = in.readString();
+            obj.put(key, readValue(in));
+        }
+        return obj;
+    }
+
+    private static JSONArray readArray(Input in) {
+        int length = in.readLength();
+        JSONArray array = new JSONArray();
+        for(int i = 0; i < length; i++) {
+            array.put(readValue(in));
+        }
+        return array;
+    }
+
+    private static Object readValue(Input in) {
+        int tag = in.read();
+        switch(tag) {
+            case NULL: return JSONObject.NULL;
+            case FALSE: return Boolean.FALSE;
+            case TRUE: return Boolean.TRUE;
+            case INTEGER: {
+                long v = in.readVarint();
+                long l = (v >>> 1) ^ -(v & 1);
+                //same types org.json uses when parsing text
+                if(l == (int)l) return (int)l;
+                return l;
+            }
+            case DOUBLE: return Double.longBitsToDouble(in.readLong());
+            case STRING: return in.readString();
+            case OBJECT: return readObject(in);
+            case ARRAY: return readArray(in);
+            case BIG_INTEGER: return new BigInteger(in.readString());
+            case BIG_DECIMAL: return new BigDecimal(in.readString());
+            default: throw new JSONException("Unknown value tag " + tag);
+        }
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+        Output() {
+            super(64);
+        }
+
+        void writeVarint(long v) {
+            while((v & ~0x7FL) != 0) {
+                write((int)((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int)v);
+        }
+
+        void writeLong(long v) {
+            for(int i = 56; i >= 0; i -= 8) {
+                write((int)(v >>> i));
+            }
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static class Input {
+        private final byte[] data;
+        int pos;
+
+        Input(byte[] data) {
+            this.data = data;
+        }
+
+        int read() {
+            return data[pos++] & 0xFF;
+        }
+
+        long readVarint() {
+            long v = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                v |= (long)(b & 0x7F) << shift;
+                if((b & 0x80) == 0) return v;
+            }
+            throw new JSONException("Malformed varint");
+        }
+
+        int readLength() {
+            long length = readVarint();
+            if(length < 0 || length > data.length - pos) {
+                throw new JSONException("Invalid length " + length);
+            }
+            return (int)length;
+        }
+
+        long readLong() {
+            long v = 0;
+            for(int i = 0; i < 8; i++) {
+                v = (v << 8) | read();
+            }
+            return v;
+        }
+
+        String readString() {
+            int length = readLength();
+            String s = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
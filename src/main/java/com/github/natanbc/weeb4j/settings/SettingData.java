@@ -0,0 +1,217 @@
+package com.github.natanbc.weeb4j.settings;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read only view of a setting's data. The data is a private copy owned by the setting and is never modified,
+ * so reading doesn't copy anything and views can be freely shared and read from multiple threads.
+ * Use {@link #toJSONObject()} to get a mutable copy.
+ */
+@SuppressWarnings("unused")
+public final class SettingData {
+    private final JSONObject data;
+
+    SettingData(@Nonnull JSONObject data) {
+        this.data = data;
+    }
+
+    /**
+     * Returns whether or not a key is present.
+     *
+     * @param key Key to check.
+     *
+     * @return True if the key is present.
+     */
+    @CheckReturnValue
+    public boolean has(@Nonnull String key) {
+        return data.has(key);
+    }
+
+    /**
+     * Returns the keys present in this data.
+     *
+     * @return An unmodifiable set of keys.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(data.keySet());
+    }
+
+    /**
+     * Returns the amount of keys in this data.
+     *
+     * @return The amount of keys.
+     */
+    @CheckReturnValue
+    public int size() {
+        return data.length();
+    }
+
+    /**
+     * Returns whether or not this data has no keys.
+     *
+     * @return True if there are no keys.
+     */
+    @CheckReturnValue
+    public boolean isEmpty() {
+        return data.length() == 0;
+    }
+
+    /**
+     * Returns the string value of a key.
+     *
+     * @param key Key to read.
+     * @param defaultValue Value returned if the key is missing.
+     *
+     * @return The value, or the default value if missing.
+     */
+    @CheckReturnValue
+    public String getString(@Nonnull String key, @Nullable String defaultValue) {
+        return data.optString(key, defaultValue);
+    }
+
+    /**
+     * Returns the string value of a key.
+     *
+     * @param key Key to read.
+     *
+     * @return The value, or null if missing.
+     */
+    @CheckReturnValue
+    @Nullable
+    public String getString(@Nonnull String key) {
+        return getString(key, null);
+    }
+
+    /**
+     * Returns the boolean value of a key.
+     *
+     * @param key Key to read.
+     * @param defaultValue Value returned if the key is missing or not a boolean.
+     *
+     * @return The value, or the default value if missing.
+     */
+    @CheckReturnValue
+    public boolean getBoolean(@Nonnull String key, boolean defaultValue) {
+        return data.optBoolean(key, defaultValue);
+    }
+
+    /**
+     * Returns the int value of a key.
+     *
+     * @param key Key to read.
+     * @param defaultValue Value returned if the key is missing or not a number.
+     *
+     * @return The value, or the default value if missing.
+     */
+    @CheckReturnValue
+    public int getInt(@Nonnull String key, int defaultValue) {
+        return data.optInt(key, defaultValue);
+    }
+
+    /**
+     * Returns the long value of a key.
+     *
+     * @param key Key to read.
+     * @param defaultValue Value returned if the key is missing or not a number.
+     *
+     * @return The value, or the default value if missing.
+     */
+    @CheckReturnValue
+    public long getLong(@Nonnull String key, long defaultValue) {
+        return data.optLong(key, defaultValue);
+    }
+
+    /**
+     * Returns the double value of a key.
+     *
+     * @param key Key to read.
+     * @param defaultValue Value returned if the key is missing or not a number.
+     *
+     * @return The value, or the default value if missing.
+     */
+    @CheckReturnValue
+    public double getDouble(@Nonnull String key, double defaultValue) {
+        return data.optDouble(key, defaultValue);
+    }
+
+    /**
+     * Returns a view of a nested object.
+     *
+     * @param key Key to read.
+     *
+     * @return A view of the object, or null if missing or not an object.
+     */
+    @CheckReturnValue
+    @Nullable
+    public SettingData getData(@Nonnull String key) {
+        JSONObject obj = data.optJSONObject(key);
+        return obj == null ? null : new SettingData(obj);
+    }
+
+    /**
+     * Returns a copy of a nested array, with nested objects and arrays converted to maps and lists.
+     *
+     * @param key Key to read.
+     *
+     * @return An unmodifiable copy of the array, or null if missing or not an array.
+     */
+    @CheckReturnValue
+    @Nullable
+    public List<Object> getList(@Nonnull String key) {
+        JSONArray array = data.optJSONArray(key);
+        return array == null ? null : Collections.unmodifiableList(array.toList());
+    }
+
+    /**
+     * Returns a mutable copy of this data. Changes to the copy aren't visible in this view.
+     *
+     * @return A copy of this data.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public JSONObject toJSONObject() {
+        return copy(data);
+    }
+
+    @Override
+    public String toString() {
+        return data.toString();
+    }
+
+    //deep copy, so changes to nested objects and arrays of either side aren't visible in the other
+    static JSONObject copy(JSONObject obj) {
+        JSONObject copy = new JSONObject();
+        for(String key : obj.keySet()) {
+            copy.put(key, copyValue(obj.opt(key)));
+        }
+        return copy;
+    }
+
+    private static JSONArray copy(JSONArray array) {
+        JSONArray copy = new JSONArray();
+        for(int i = 0; i < array.length(); i++) {
+            copy.put(copyValue(array.opt(i)));
+        }
+        return copy;
+    }
+
+    private static Object copyValue(Object value) {
+        if(value instanceof JSONObject) {
+            return copy((JSONObject)value);
+        }
+        if(value instanceof JSONArray) {
+            return copy((JSONArray)value);
+        }
+        return value;
+    }
+}
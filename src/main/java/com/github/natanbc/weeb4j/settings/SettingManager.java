@@ -7,7 +7,11 @@ import org.json.JSONObject;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings("unused")
 public interface SettingManager {
@@ -34,6 +38,31 @@ public interface SettingManager {
      */
     SettingCache getSettingCache();
 
+    /**
+     * Enables or disables write-behind saves. When enabled, {@link #saveSetting(String, String, JSONObject) saves}
+     * update the {@link #getSettingCache() cache} right away, but are only sent once no other save of the same
+     * setting happens for {@code debounce}, or {@code maxDelay} after the first unsent save, whichever comes first.
+     * Only the latest data of each setting is sent. The requests returned by save methods complete once their data,
+     * or newer data, is sent. Disabling write-behind sends all pending saves. Disabled by default.
+     *
+     * Reads aren't affected by pending saves, so a {@link #getSettingCache() cache} should be used along with this.
+     *
+     * @param debounce Time without saves of a setting before it's sent, or 0 to disable write-behind.
+     * @param maxDelay Maximum time a save may wait before being sent.
+     * @param unit Unit of the times.
+     */
+    void setWriteBehind(long debounce, long maxDelay, @Nonnull TimeUnit unit);
+
+    /**
+     * Sends all pending write-behind saves right away, eg before shutting down.
+     *
+     * @return A stage completed once all pending saves were sent.
+     *
+     * @see #setWriteBehind(long, long, TimeUnit)
+     */
+    @Nonnull
+    CompletionStage<Void> flushAll();
+
     /**
      * Gets a setting from the API.
      *
@@ -46,6 +75,37 @@ public interface SettingManager {
     @Nonnull
     PendingRequest<Setting> getSetting(@Nonnull String type, @Nonnull String id);
 
+    /**
+     * Gets several settings of the same type. Cached settings are returned without a request, and the rest
+     * are requested with at most {@code parallelism} requests running at once, and saved to the cache.
+     * A failed request doesn't fail the others, the setting is just left out of the result, so it can be retried.
+     *
+     * @param type The setting type.
+     * @param ids The setting IDs.
+     * @param parallelism Maximum amount of requests running at once.
+     *
+     * @return The settings, by id. Settings whose request failed aren't included.
+     */
+    @CheckReturnValue
+    @Nonnull
+    CompletionStage<Map<String, Setting>> getSettings(@Nonnull String type, @Nonnull Collection<String> ids, int parallelism);
+
+    /**
+     * Gets several settings of the same type, making at most 8 requests at once.
+     *
+     * @param type The setting type.
+     * @param ids The setting IDs.
+     *
+     * @return The settings, by id. Settings whose request failed aren't included.
+     *
+     * @see #getSettings(String, Collection, int)
+     */
+    @CheckReturnValue
+    @Nonnull
+    default CompletionStage<Map<String, Setting>> getSettings(@Nonnull String type, @Nonnull Collection<String> ids) {
+        return getSettings(type, ids, 8);
+    }
+
     /**
      * Saves a setting to the API.
      *
@@ -4,6 +4,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 @SuppressWarnings({"unused", "WeakerAccess"})
 public class IOUtils {
@@ -25,6 +27,25 @@ public class IOUtils {
         return writeTo(os, DEFAULT_BUFFER_SIZE);
     }
 
+    public static InputStreamFunction<Long> writeTo(WritableByteChannel channel, int bufferSize) {
+        return is->{
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            long total = 0;
+            int r;
+            while((r = is.read(buffer.array())) != -1) {
+                buffer.position(0).limit(r);
+                while(buffer.hasRemaining()) {
+                    total += channel.write(buffer);
+                }
+            }
+            return total;
+        };
+    }
+
+    public static InputStreamFunction<Long> writeTo(WritableByteChannel channel) {
+        return writeTo(channel, DEFAULT_BUFFER_SIZE);
+    }
+
     private static void copy(InputStream from, OutputStream to, int bufferSize) throws IOException {
         byte[] buffer = new byte[bufferSize];
         int r;
@@ -0,0 +1,78 @@
+package com.github.natanbc.weeb4j.settings;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Set;
+
+/**
+ * Setting cache that keeps settings encoded with {@link SettingCodec} instead of as {@link JSONObject JSONObjects},
+ * trading some decoding work on every read for a much smaller memory footprint.
+ */
+@SuppressWarnings("unused")
+public class CompactGuavaSettingCache implements SettingCache {
+    /**
+     * Weighs entries by their estimated size in bytes, see {@link SettingCodec#weigh(CacheEntry, byte[])}.
+     */
+    public static final Weigher<CacheEntry, byte[]> WEIGHER = SettingCodec::weigh;
+
+    private final Cache<CacheEntry, byte[]> cache;
+
+    public CompactGuavaSettingCache(Cache<CacheEntry, byte[]> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Creates a cache bounded by the estimated memory used by the cached settings.
+     *
+     * @param maximumBytes Maximum estimated size of all cached settings, in bytes.
+     */
+    public CompactGuavaSettingCache(long maximumBytes) {
+        this(CacheBuilder.newBuilder().maximumWeight(maximumBytes).weigher(WEIGHER).build());
+    }
+
+    @Nullable
+    @Override
+    public JSONObject getSetting(@Nonnull String type, @Nonnull String id) {
+        return decode(cache.getIfPresent(new CacheEntry(type, id)));
+    }
+
+    @Override
+    public void saveSetting(@Nonnull String type, @Nonnull String id, @Nonnull JSONObject setting) {
+        cache.put(new CacheEntry(type, id), SettingCodec.encode(setting));
+    }
+
+    @Override
+    public void invalidateSetting(@Nonnull String type, @Nonnull String id) {
+        cache.invalidate(new CacheEntry(type, id));
+    }
+
+    @Nullable
+    @Override
+    public JSONObject getSubSetting(@Nonnull String parentType, @Nonnull String parentId, @Nonnull String type, @Nonnull String id) {
+        return decode(cache.getIfPresent(new CacheEntry(parentType, parentId, type, id)));
+    }
+
+    @Override
+    public void saveSubSetting(@Nonnull String parentType, @Nonnull String parentId, @Nonnull String type, @Nonnull String id, @Nonnull JSONObject setting) {
+        cache.put(new CacheEntry(parentType, parentId, type, id), SettingCodec.encode(setting));
+    }
+
+    @Override
+    public void invalidateSubSetting(@Nonnull String parentType, @Nonnull String parentId, @Nonnull String type, @Nonnull String id) {
+        cache.invalidate(new CacheEntry(parentType, parentId, type, id));
+    }
+
+    @Override
+    public Set<CacheEntry> keySet() {
+        return cache.asMap().keySet();
+    }
+
+    private static JSONObject decode(byte[] data) {
+        return data == null ? null : SettingCodec.decode(data);
+    }
+}